@@ -0,0 +1,73 @@
+#!/bin/sh
+# Starts a leader and several read replicas on this machine, writes through the leader
+# and checks each replica can read its own writes.
+#
+# Usage: scripts/replication-cluster.sh [followers]
+# Build first with "mvn package". Set KEEP_RUNNING=1 to leave the servers up afterwards.
+
+FOLLOWERS=${1:-2}
+BASE_PORT=${BASE_PORT:-18090}
+REPLICATION_PORT=${REPLICATION_PORT:-17070}
+VERSION=0.0.1-SNAPSHOT
+JAR="target/cscserver-$VERSION.jar"
+
+if [ ! -f "$JAR" ]; then
+    echo "$JAR not found, run mvn package first" >&2
+    exit 1
+fi
+
+PIDS=""
+stop() {
+    [ -n "$PIDS" ] && kill $PIDS 2> /dev/null
+}
+trap stop EXIT
+trap "exit 130" INT TERM
+
+java -jar "$JAR" --server.port="$BASE_PORT" --csc.docs.open-browser=false \
+    --csc.replication.role=leader --csc.replication.port="$REPLICATION_PORT" > target/leader.log 2>&1 &
+PIDS="$!"
+for i in $(seq 1 "$FOLLOWERS"); do
+    java -jar "$JAR" --server.port=$((BASE_PORT + i)) --csc.docs.open-browser=false \
+        --csc.replication.role=follower --csc.replication.port="$REPLICATION_PORT" > "target/follower-$i.log" 2>&1 &
+    PIDS="$PIDS $!"
+done
+
+# Wait for every server to answer.
+for i in $(seq 0 "$FOLLOWERS"); do
+    until curl -sf "http://localhost:$((BASE_PORT + i))/api/v1/hello" > /dev/null 2>&1; do
+        sleep 0.1
+    done
+done
+echo "Leader on $BASE_PORT, $FOLLOWERS followers from $((BASE_PORT + 1))"
+
+STATUS=0
+
+# Replicas must reject writes.
+code=$(curl -s -o /dev/null -w '%{http_code}' -X POST -H "Content-Type: application/json" \
+    -d '{"name":"Lyon","state":"Rhone","country":"France","foundingDate":"1900-01-01"}' \
+    "http://localhost:$((BASE_PORT + 1))/api/v1/city")
+echo "POST to a follower returned $code"
+[ "$code" -eq 405 ] || STATUS=1
+
+# Write through the leader, each write returns its sequence number.
+for n in 1 2 3 4 5; do
+    SEQUENCE=$(curl -s -D - -o /dev/null -X POST -H "Content-Type: application/json" \
+        -d "{\"name\":\"City $n\",\"state\":\"State\",\"country\":\"France\",\"foundingDate\":\"19$n$n-01-01\"}" \
+        "http://localhost:$BASE_PORT/api/v1/city" | tr -d '\r' | awk -F': ' 'tolower($1) == "x-csc-sequence" {print $2}')
+done
+echo "Last write has sequence $SEQUENCE"
+
+# Every replica must include the last write when asked for it.
+for i in $(seq 1 "$FOLLOWERS"); do
+    port=$((BASE_PORT + i))
+    count=$(curl -sf "http://localhost:$port/api/v1/city/France?minSequence=$SEQUENCE" | grep -o '"name"' | wc -l)
+    lag=$(curl -sf "http://localhost:$port/actuator/metrics/csc.replication.lag.entries" | grep -o '"value":[0-9.]*')
+    echo "follower $i returned $count of 5 cities, lag $lag"
+    [ "$count" -eq 5 ] || STATUS=1
+done
+
+if [ -n "$KEEP_RUNNING" ]; then
+    echo "Servers running, press Ctrl+C to stop"
+    wait
+fi
+exit $STATUS
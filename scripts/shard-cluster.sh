@@ -0,0 +1,69 @@
+#!/bin/sh
+# Starts a sharded cluster of local servers, loads some cities through one node and
+# checks every node returns all of them.
+#
+# Usage: scripts/shard-cluster.sh [nodes]
+# Build first with "mvn package". Set KEEP_RUNNING=1 to leave the cluster up afterwards.
+
+NODES=${1:-3}
+BASE_PORT=${BASE_PORT:-18081}
+VERSION=0.0.1-SNAPSHOT
+JAR="target/cscserver-$VERSION.jar"
+
+if [ ! -f "$JAR" ]; then
+    echo "$JAR not found, run mvn package first" >&2
+    exit 1
+fi
+
+# Every node is given the same list, in the same order.
+LIST=""
+for i in $(seq 0 $((NODES - 1))); do
+    LIST="$LIST${LIST:+,}http://localhost:$((BASE_PORT + i))"
+done
+
+PIDS=""
+stop() {
+    [ -n "$PIDS" ] && kill $PIDS 2> /dev/null
+}
+trap stop EXIT
+trap "exit 130" INT TERM
+
+for i in $(seq 0 $((NODES - 1))); do
+    java -jar "$JAR" --server.port=$((BASE_PORT + i)) --csc.docs.open-browser=false \
+        --csc.shard.nodes="$LIST" --csc.shard.self="$i" > "target/shard-$i.log" 2>&1 &
+    PIDS="$PIDS $!"
+done
+
+# Wait for every node to answer.
+for i in $(seq 0 $((NODES - 1))); do
+    until curl -sf "http://localhost:$((BASE_PORT + i))/api/v1/hello" > /dev/null 2>&1; do
+        sleep 0.1
+    done
+done
+echo "Started $NODES nodes: $LIST"
+
+# Write every city through the first node, it forwards each one to the country's owner.
+COUNTRIES="France Germany Japan Brazil Canada Kenya Peru Spain"
+for country in $COUNTRIES; do
+    for n in 1 2 3; do
+        curl -sf -X POST -H "Content-Type: application/json" \
+            -d "{\"name\":\"$country City $n\",\"state\":\"State\",\"country\":\"$country\",\"foundingDate\":\"19$n$n-01-01\"}" \
+            "http://localhost:$BASE_PORT/api/v1/city" > /dev/null || echo "POST $country $n failed" >&2
+    done
+done
+EXPECTED=$(( $(echo $COUNTRIES | wc -w) * 3 ))
+
+# Any node must return every city, merged by founding date.
+STATUS=0
+for i in $(seq 0 $((NODES - 1))); do
+    count=$(curl -sf "http://localhost:$((BASE_PORT + i))/api/v1/city" | grep -o '"name"' | wc -l)
+    echo "node $i returned $count of $EXPECTED cities"
+    [ "$count" -eq "$EXPECTED" ] || STATUS=1
+done
+echo "France from the last node: $(curl -sf "http://localhost:$((BASE_PORT + NODES - 1))/api/v1/city/France")"
+
+if [ -n "$KEEP_RUNNING" ]; then
+    echo "Cluster running, press Ctrl+C to stop"
+    wait
+fi
+exit $STATUS
@@ -0,0 +1,49 @@
+#!/bin/sh
+# Measures the time from launching the server to its first successful request.
+#
+# Usage: scripts/startup-benchmark.sh [runs]
+# Build first with "mvn package" for the default mode and "mvn -Pfast-startup package"
+# for the AOT + AppCDS mode, the script benchmarks whichever jars exist.
+
+RUNS=${1:-5}
+PORT=${PORT:-18080}
+VERSION=0.0.1-SNAPSHOT
+URL="http://localhost:$PORT/api/v1/hello"
+
+# Prints the milliseconds between launching a command and the first successful request.
+time_to_first_request() {
+    start=$(date +%s%N)
+    "$@" --server.port="$PORT" > /dev/null 2>&1 &
+    pid=$!
+    until curl -sf "$URL" > /dev/null 2>&1; do
+        if ! kill -0 "$pid" 2> /dev/null; then
+            echo "server exited before answering" >&2
+            return 1
+        fi
+        sleep 0.01
+    done
+    end=$(date +%s%N)
+    kill "$pid"
+    wait "$pid" 2> /dev/null
+    echo $(( (end - start) / 1000000 ))
+}
+
+# Runs a mode several times and prints each result.
+benchmark() {
+    name=$1
+    shift
+    printf '%-10s' "$name"
+    for i in $(seq "$RUNS"); do
+        printf ' %6sms' "$(time_to_first_request "$@")"
+    done
+    echo
+}
+
+if [ -f "target/cscserver-$VERSION.jar" ]; then
+    benchmark default java -jar "target/cscserver-$VERSION.jar" --csc.docs.open-browser=false
+fi
+
+if [ -f target/cds/app.jsa ]; then
+    benchmark fast java -XX:SharedArchiveFile=target/cds/app.jsa -Dspring.aot.enabled=true \
+        -jar "target/cds/cscserver-$VERSION-cds.jar" --spring.profiles.active=fast
+fi
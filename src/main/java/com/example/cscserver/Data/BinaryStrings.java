@@ -0,0 +1,50 @@
+package com.example.cscserver.Data;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes and reads strings as their UTF-8 length followed by their UTF-8 bytes.
+ * Used instead of DataOutput.writeUTF, which can't write strings longer than
+ * 64KB once encoded, and the API doesn't limit the length of any field.
+ * @author Karl Clifford
+ * @version 1.0.0
+ */
+final class BinaryStrings {
+
+    /**
+     * Only has static methods.
+     */
+    private BinaryStrings() {
+    }
+
+    /**
+     * Writes a string of any length.
+     * @param out the stream to write to.
+     * @param text the string.
+     * @throws IOException if the stream can't be written.
+     */
+    static void write(DataOutput out, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a string written by write.
+     * @param in the stream to read from.
+     * @return the string.
+     * @throws IOException if the stream can't be read or is corrupt.
+     */
+    static String read(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Negative string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
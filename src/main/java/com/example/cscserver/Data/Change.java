@@ -0,0 +1,63 @@
+package com.example.cscserver.Data;
+
+import com.example.cscserver.Model.City;
+
+/**
+ * A city that was added or removed, recorded by the writer thread so it can be
+ * replayed on read replicas.
+ * @author Karl Clifford
+ * @version 1.0.0
+ */
+final class Change {
+
+    /**
+     * True if the city was removed, false if it was added.
+     */
+    private final boolean removed;
+
+    /**
+     * The city that changed.
+     */
+    private final City city;
+
+    /**
+     * The version of the data once this change was applied.
+     */
+    private final long sequence;
+
+    /**
+     * The constructor of this class.
+     * @param removed true if the city was removed, false if it was added.
+     * @param city the city that changed.
+     * @param sequence the version of the data once this change was applied.
+     */
+    Change(boolean removed, City city, long sequence) {
+        this.removed = removed;
+        this.city = city;
+        this.sequence = sequence;
+    }
+
+    /**
+     * Checks if the city was removed.
+     * @return true if the city was removed, false if it was added.
+     */
+    boolean isRemoved() {
+        return removed;
+    }
+
+    /**
+     * Gets the city that changed.
+     * @return the city.
+     */
+    City getCity() {
+        return city;
+    }
+
+    /**
+     * Gets the version of the data once this change was applied.
+     * @return the sequence number of this change.
+     */
+    long getSequence() {
+        return sequence;
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.cscserver.Data;
+
+import java.util.List;
+
+/**
+ * The changes published together in one snapshot, in the order they were applied.
+ * @author Karl Clifford
+ * @version 1.0.0
+ */
+final class ChangeBatch {
+
+    /**
+     * When the snapshot was published by the leader, in milliseconds since the epoch.
+     */
+    private final long publishedAt;
+
+    /**
+     * The changes, in the order they were applied.
+     */
+    private final List<Change> changes;
+
+    /**
+     * The constructor of this class.
+     * @param publishedAt when the snapshot was published by the leader.
+     * @param changes the changes, in the order they were applied.
+     */
+    ChangeBatch(long publishedAt, List<Change> changes) {
+        this.publishedAt = publishedAt;
+        this.changes = changes;
+    }
+
+    /**
+     * Gets when the snapshot was published by the leader.
+     * @return milliseconds since the epoch.
+     */
+    long getPublishedAt() {
+        return publishedAt;
+    }
+
+    /**
+     * Gets the changes.
+     * @return the changes, in the order they were applied.
+     */
+    List<Change> getChanges() {
+        return changes;
+    }
+
+    /**
+     * Gets the version of the data once every change in this batch was applied.
+     * @return the sequence number of the last change.
+     */
+    long getLastSequence() {
+        return changes.get(changes.size() - 1).getSequence();
+    }
+}
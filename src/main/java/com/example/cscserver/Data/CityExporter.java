@@ -0,0 +1,138 @@
+package com.example.cscserver.Data;
+
+import com.example.cscserver.Model.BasicCity;
+import com.google.gson.Gson;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streams every stored city as CSV or NDJSON in the same shape CityImporter reads.
+ * Cities are written straight from a snapshot, so memory use doesn't grow with the dataset.
+ * @author Karl Clifford
+ * @version 1.0.0
+ */
+@Service
+public class CityExporter {
+
+    /**
+     * Writes NDJSON records, Gson is safe to share between threads.
+     */
+    private static final Gson GSON = new Gson();
+
+    /**
+     * The header row of CSV exports.
+     */
+    private static final String CSV_HEADER = "name,state,country,foundingDate";
+
+    /**
+     * The service the cities are read from.
+     */
+    private final DataService data;
+
+    /**
+     * The constructor of this class.
+     * @param data the service the cities are read from.
+     */
+    public CityExporter(DataService data) {
+        this.data = data;
+    }
+
+    /**
+     * Writes every stored city, the stream is flushed but not closed.
+     * @param out the stream to write to.
+     * @param format the format to write.
+     * @throws IOException if the stream can't be written to.
+     */
+    public void export(OutputStream out, CityImporter.Format format) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        if (format == CityImporter.Format.CSV) {
+            writer.write(CSV_HEADER);
+            writer.write('\n');
+        }
+
+        // Take the latest snapshot, it won't change while we write it.
+        for (Map.Entry<String, Map<String, List<BasicCity>>> country : data.snapshot().getCountries().entrySet()) {
+            for (Map.Entry<String, List<BasicCity>> state : country.getValue().entrySet()) {
+                for (BasicCity city : state.getValue()) {
+                    if (format == CityImporter.Format.CSV) {
+                        writeCsv(writer, city.getName(), state.getKey(), country.getKey(), city.getFoundingDate());
+                    } else {
+                        GSON.toJson(new ExportedCity(city, state.getKey(), country.getKey()), writer);
+                    }
+                    writer.write('\n');
+                }
+            }
+        }
+        writer.flush();
+    }
+
+    /**
+     * Writes one CSV record, quoting fields that need it.
+     * @param writer the writer to write to.
+     * @param fields the fields of the record.
+     * @throws IOException if the stream can't be written to.
+     */
+    private static void writeCsv(Writer writer, String... fields) throws IOException {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            String field = fields[i];
+            if (field.indexOf(',') >= 0 || field.indexOf('"') >= 0
+                    || field.indexOf('\n') >= 0 || field.indexOf('\r') >= 0) {
+                writer.write('"');
+                writer.write(field.replace("\"", "\"\""));
+                writer.write('"');
+            } else {
+                writer.write(field);
+            }
+        }
+    }
+
+    /**
+     * The shape of an NDJSON record, matching the body of POST /city.
+     */
+    private static final class ExportedCity {
+
+        /**
+         * The name of the city.
+         */
+        private final String name;
+
+        /**
+         * The state the city is situated in.
+         */
+        private final String state;
+
+        /**
+         * The country the state is situated in.
+         */
+        private final String country;
+
+        /**
+         * The date the city was founded in.
+         */
+        private final String foundingDate;
+
+        /**
+         * The constructor of this class.
+         * @param city the stored city.
+         * @param state the state the city is in.
+         * @param country the country the state is in.
+         */
+        private ExportedCity(BasicCity city, String state, String country) {
+            this.name = city.getName();
+            this.state = state;
+            this.country = country;
+            this.foundingDate = city.getFoundingDate();
+        }
+    }
+}
@@ -0,0 +1,415 @@
+package com.example.cscserver.Data;
+
+import com.example.cscserver.Model.City;
+import com.example.cscserver.Model.ImportResult;
+import com.google.gson.Gson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bulk loads cities from CSV or NDJSON files on the local disk.
+ * Files are memory-mapped in chunks that are parsed in parallel and each
+ * chunk is handed to the DataService as a single bulk store.
+ * @author Karl Clifford
+ * @version 1.0.0
+ */
+@Service
+public class CityImporter {
+
+    /**
+     * Handles server logs.
+     */
+    private static final Logger LOG =
+            LoggerFactory.getLogger(CityImporter.class);
+
+    /**
+     * The approximate size of each chunk of the file parsed by one thread.
+     */
+    private static final long CHUNK_SIZE = 16L * 1024 * 1024;
+
+    /**
+     * The number of threads used to parse chunks.
+     */
+    private static final int PARSER_THREADS = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Parses NDJSON records, Gson is safe to share between threads.
+     */
+    private static final Gson GSON = new Gson();
+
+    /**
+     * The file formats that can be imported.
+     */
+    public enum Format {
+        /**
+         * Comma separated name,state,country,foundingDate with an optional header row,
+         * quoted fields may contain commas, doubled quotes and line breaks.
+         */
+        CSV,
+        /**
+         * One JSON city object per line, in the same shape accepted by POST /city.
+         */
+        NDJSON;
+
+        /**
+         * Works out the format from a file name.
+         * @param fileName the name of the file.
+         * @return NDJSON for .ndjson, .jsonl and .json files, CSV otherwise.
+         */
+        public static Format fromFileName(String fileName) {
+            String lower = fileName.toLowerCase(Locale.ROOT);
+            if (lower.endsWith(".ndjson") || lower.endsWith(".jsonl") || lower.endsWith(".json")) {
+                return NDJSON;
+            }
+            return CSV;
+        }
+    }
+
+    /**
+     * The service the cities are loaded into.
+     */
+    private final DataService data;
+
+    /**
+     * The file to import when the server starts, blank to skip.
+     */
+    private final String startupFile;
+
+    /**
+     * The directory on-demand imports are read from.
+     */
+    private final Path directory;
+
+    /**
+     * Whether the countries are split between several nodes, the startup file is skipped if they are.
+     */
+    private final boolean sharded;
+
+    /**
+     * The constructor of this class.
+     * @param data the service the cities are loaded into.
+     * @param startupFile the file to import when the server starts, blank to skip.
+     * @param directory the directory on-demand imports are read from.
+     * @param shardNodes the comma separated base URLs of every shard, blank if sharding is off.
+     */
+    public CityImporter(DataService data,
+                        @Value("${csc.import.file:}") String startupFile,
+                        @Value("${csc.import.directory:imports}") String directory,
+                        @Value("${csc.shard.nodes:}") String shardNodes) {
+        this.data = data;
+        this.startupFile = startupFile;
+        this.directory = Path.of(directory).toAbsolutePath().normalize();
+        this.sharded = Arrays.stream(shardNodes.split(",")).filter(node -> !node.isBlank()).count() > 1;
+    }
+
+    /**
+     * Imports the configured startup file once the server is ready.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void importOnStartup() {
+        if (startupFile == null || startupFile.isBlank()) {
+            return;
+        }
+        if (sharded) {
+            // Every row would be stored here, whichever node owns its country.
+            LOG.error("Not importing " + startupFile + ", imports aren't available while the countries are split"
+                    + " between nodes");
+            return;
+        }
+
+        try {
+            importFile(Path.of(startupFile), Format.fromFileName(startupFile));
+        } catch (IOException e) {
+            LOG.error("Error importing " + startupFile + ": " + e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.error("Import of " + startupFile + " was interrupted");
+        }
+    }
+
+    /**
+     * Resolves the name of a file in the import directory.
+     * @param fileName the name of the file.
+     * @return the path of the file.
+     * @throws IllegalArgumentException if the name points outside the import directory.
+     */
+    public Path resolve(String fileName) {
+        Path file = directory.resolve(fileName).normalize();
+        if (!file.startsWith(directory)) {
+            throw new IllegalArgumentException("file must be inside the import directory");
+        }
+        return file;
+    }
+
+    /**
+     * Imports every valid city in a file, cities that already exist are skipped.
+     * @param file the file to import.
+     * @param format the format of the file.
+     * @return a summary of the import including its throughput.
+     * @throws IOException if the file can't be read.
+     * @throws InterruptedException if the import is cancelled.
+     */
+    public ImportResult importFile(Path file, Format format) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        LongAdder rowsRead = new LongAdder();
+        LongAdder rowsStored = new LongAdder();
+        LongAdder rowsRejected = new LongAdder();
+        LongAdder bytesDone = new LongAdder();
+
+        ExecutorService parsers = Executors.newFixedThreadPool(PARSER_THREADS);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            LOG.info("Importing " + file + " (" + size + " bytes) as " + format);
+
+            // Split the file into chunks that end between records and parse them in parallel.
+            List<Future<Void>> chunks = new ArrayList<>();
+            long position = 0;
+            while (position < size) {
+                long chunkStart = position;
+                long chunkEnd = nextRecordStart(channel, chunkStart, Math.min(size, position + CHUNK_SIZE), size,
+                        format);
+                Callable<Void> task = () -> {
+                    List<City> cities = parseChunk(channel, chunkStart, chunkEnd, format, rowsRead, rowsRejected);
+                    rowsStored.add(data.storeCities(cities).get());
+                    bytesDone.add(chunkEnd - chunkStart);
+                    LOG.info("Import of " + file.getFileName() + " is " + (bytesDone.sum() * 100 / size)
+                            + "% complete, " + rowsRead.sum() + " rows read");
+                    return null;
+                };
+                chunks.add(parsers.submit(task));
+                position = chunkEnd;
+            }
+
+            // Wait for every chunk to be stored.
+            for (Future<Void> chunk : chunks) {
+                try {
+                    chunk.get();
+                } catch (ExecutionException e) {
+                    throw new IOException("Error importing " + file, e.getCause());
+                }
+            }
+        } finally {
+            parsers.shutdownNow();
+        }
+
+        ImportResult result = new ImportResult(file.toString(), rowsRead.sum(), rowsStored.sum(),
+                rowsRejected.sum(), (System.nanoTime() - start) / 1_000_000);
+        LOG.info(result.toString());
+        return result;
+    }
+
+    /**
+     * Parses every record in a chunk of the file, CSV records may span lines inside quoted fields.
+     * @param channel the file.
+     * @param start the offset of the first byte of the chunk.
+     * @param end the offset after the last byte of the chunk.
+     * @param format the format of the file.
+     * @param rowsRead counts the records read.
+     * @param rowsRejected counts the records that failed validation.
+     * @return the valid cities in the chunk.
+     * @throws IOException if the file can't be read.
+     */
+    private static List<City> parseChunk(FileChannel channel, long start, long end, Format format,
+                                         LongAdder rowsRead, LongAdder rowsRejected) throws IOException {
+        MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        CharBuffer text = StandardCharsets.UTF_8.decode(region);
+        ArrayList<City> cities = new ArrayList<>();
+        // Only the first line of a CSV file can be a header.
+        boolean checkHeader = format == Format.CSV && start == 0;
+
+        boolean csv = format == Format.CSV;
+        boolean quoted = false;
+        int lineStart = 0;
+        for (int i = 0; i <= text.length(); i++) {
+            if (i < text.length()) {
+                char c = text.charAt(i);
+                if (csv && c == '"') {
+                    // Doubled quotes toggle twice, so this tracks whether we're inside a quoted field.
+                    quoted = !quoted;
+                }
+                if (c != '\n' || quoted) {
+                    continue;
+                }
+            }
+            // Trim Windows line endings.
+            int lineEnd = i;
+            if (lineEnd > lineStart && text.charAt(lineEnd - 1) == '\r') {
+                lineEnd--;
+            }
+            if (lineEnd > lineStart) {
+                String line = text.subSequence(lineStart, lineEnd).toString();
+                if (checkHeader && line.regionMatches(true, 0, "name,", 0, "name,".length())) {
+                    // Skip the header row.
+                    checkHeader = false;
+                } else {
+                    checkHeader = false;
+                    rowsRead.increment();
+                    City city = format == Format.CSV ? parseCsv(line) : parseJson(line);
+                    if (city == null) {
+                        rowsRejected.increment();
+                    } else {
+                        cities.add(city);
+                    }
+                }
+            }
+            lineStart = i + 1;
+        }
+        return cities;
+    }
+
+    /**
+     * Parses a CSV record in the order name,state,country,foundingDate.
+     * @param line the record.
+     * @return the city or null if the record is invalid.
+     */
+    private static City parseCsv(String line) {
+        List<String> fields = splitCsv(line);
+        if (fields.size() != 4) {
+            return null;
+        }
+        return toCity(fields.get(0), fields.get(1), fields.get(2), fields.get(3));
+    }
+
+    /**
+     * Parses a JSON city record.
+     * @param line the record.
+     * @return the city or null if the record is invalid.
+     */
+    private static City parseJson(String line) {
+        try {
+            City raw = GSON.fromJson(line, City.class);
+            if (raw == null) {
+                return null;
+            }
+            return toCity(raw.getName(), raw.getState(), raw.getCountry(), raw.getFoundingDate());
+        } catch (RuntimeException e) {
+            // The record isn't valid JSON.
+            return null;
+        }
+    }
+
+    /**
+     * Validates a record with the same rules applied to cities added through the API.
+     * @param name the name of the city.
+     * @param state the state the city is in.
+     * @param country the country the state is in.
+     * @param foundingDate the date the city was founded.
+     * @return the city or null if the record is invalid.
+     */
+    private static City toCity(String name, String state, String country, String foundingDate) {
+        if (isBlank(name) || isBlank(state) || isBlank(country) || !City.isDateFormatValid(foundingDate)) {
+            return null;
+        }
+        try {
+            City city = new City(name, state, country, foundingDate);
+            // The date must be in the present or the past.
+            return city.isDateValid() ? city : null;
+        } catch (RuntimeException e) {
+            // The date matched the format but isn't a real date.
+            return null;
+        }
+    }
+
+    /**
+     * Splits a CSV record into fields, quoted fields may contain commas and doubled quotes.
+     * @param line the record.
+     * @return the fields in the record.
+     */
+    private static List<String> splitCsv(String line) {
+        ArrayList<String> fields = new ArrayList<>(4);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    // An escaped quote.
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    /**
+     * Checks if a field is missing or empty.
+     * @param value the field.
+     * @return true if the field is blank.
+     */
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+
+    /**
+     * Finds the start of the first record after a position in the file. CSV line breaks inside
+     * quoted fields don't end a record, so quotes are tracked from the start of the chunk.
+     * @param channel the file.
+     * @param chunkStart the start of the chunk, which is never inside a quoted field.
+     * @param position the position to search from.
+     * @param size the size of the file.
+     * @param format the format of the file.
+     * @return the offset after the next line break that ends a record, or the size of the file.
+     * @throws IOException if the file can't be read.
+     */
+    private static long nextRecordStart(FileChannel channel, long chunkStart, long position, long size, Format format)
+            throws IOException {
+        boolean csv = format == Format.CSV;
+        // A quote byte is never part of a multi-byte UTF-8 character, so bytes can be scanned directly.
+        long offset = csv ? chunkStart : position;
+        boolean quoted = false;
+        ByteBuffer buffer = ByteBuffer.allocate(65536);
+        while (offset < size) {
+            buffer.clear();
+            int read = channel.read(buffer, offset);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                byte b = buffer.get(i);
+                if (csv && b == '"') {
+                    quoted = !quoted;
+                } else if (b == '\n' && !quoted && offset + i >= position) {
+                    return offset + i + 1;
+                }
+            }
+            offset += read;
+        }
+        return size;
+    }
+}
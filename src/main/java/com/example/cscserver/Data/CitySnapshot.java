@@ -0,0 +1,288 @@
+package com.example.cscserver.Data;
+
+import com.example.cscserver.Model.BasicCity;
+import com.example.cscserver.Model.City;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable point-in-time view of the country, state and city data.
+ * New versions are built by copying only the path to the changed state,
+ * everything else is shared with the previous version.
+ * @author Karl Clifford
+ * @version 1.0.0
+ */
+final class CitySnapshot {
+
+    /**
+     * The snapshot the server starts with.
+     */
+    static final CitySnapshot EMPTY = new CitySnapshot(Collections.emptyMap(), 0);
+
+    /**
+     * Stores country, states and cities, never modified once published.
+     */
+    private final Map<String, Map<String, List<BasicCity>>> countries;
+
+    /**
+     * The number of changes applied to reach this snapshot.
+     */
+    private final long version;
+
+    /**
+     * The constructor of this class.
+     * @param countries the countries in this snapshot.
+     * @param version the number of changes applied to reach this snapshot.
+     */
+    private CitySnapshot(Map<String, Map<String, List<BasicCity>>> countries, long version) {
+        this.countries = countries;
+        this.version = version;
+    }
+
+    /**
+     * Creates a snapshot from data copied from another server.
+     * @param countries the countries, which must not be modified afterwards.
+     * @param version the number of changes applied to reach this snapshot on the other server.
+     * @return the snapshot.
+     */
+    static CitySnapshot of(Map<String, Map<String, List<BasicCity>>> countries, long version) {
+        return new CitySnapshot(Collections.unmodifiableMap(countries), version);
+    }
+
+    /**
+     * Gets every country in this snapshot.
+     * @return a read-only map of country to state to cities.
+     */
+    Map<String, Map<String, List<BasicCity>>> getCountries() {
+        return countries;
+    }
+
+    /**
+     * Gets the number of changes applied to reach this snapshot.
+     * @return the version of this snapshot.
+     */
+    long getVersion() {
+        return version;
+    }
+
+    /**
+     * Starts building the next version of this snapshot.
+     * @return a builder seeded with this snapshot.
+     */
+    Builder toBuilder() {
+        return new Builder(this);
+    }
+
+    /**
+     * Builds a new snapshot from an existing one, only used by the writer thread.
+     */
+    static final class Builder {
+
+        /**
+         * The countries of the snapshot being built, the base snapshot's until the first change.
+         */
+        private Map<String, Map<String, List<BasicCity>>> countries;
+
+        /**
+         * This builder's own copy of the countries, null until the first change so
+         * batches that change nothing don't copy every country.
+         */
+        private HashMap<String, Map<String, List<BasicCity>>> ownCountries;
+
+        /**
+         * Country maps copied by this builder, safe to modify until the snapshot is built.
+         */
+        private final HashMap<String, HashMap<String, List<BasicCity>>> copiedCountries = new HashMap<>();
+
+        /**
+         * State lists copied by this builder, keyed by country then state.
+         */
+        private final HashMap<String, HashMap<String, ArrayList<BasicCity>>> copiedStates = new HashMap<>();
+
+        /**
+         * The version of the snapshot being built.
+         */
+        private long version;
+
+        /**
+         * The constructor of this class.
+         * @param base the snapshot to build on.
+         */
+        private Builder(CitySnapshot base) {
+            countries = base.countries;
+            version = base.version;
+        }
+
+        /**
+         * Checks if a city exists in the snapshot being built.
+         * @param city the city we want to find.
+         * @return true if the city exists.
+         */
+        boolean contains(City city) {
+            // Find the country.
+            Map<String, List<BasicCity>> states = countries.get(city.getCountry());
+            if (states == null) {
+                return false;
+            }
+            // Find the state.
+            List<BasicCity> cities = states.get(city.getState());
+            if (cities == null) {
+                return false;
+            }
+            // Check that the city exists.
+            for (BasicCity storedCity : cities) {
+                if (storedCity.getName().equals(city.getName())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Adds a city, the caller must check it doesn't already exist.
+         * @param city the city to add.
+         */
+        void add(City city) {
+            stateForWrite(city.getCountry(), city.getState())
+                    .add(new BasicCity(city.getName(), city.getFoundingDate()));
+            version++;
+        }
+
+        /**
+         * Removes a city, dropping its state and country if they become empty.
+         * @param city the city to remove.
+         * @return true if the city was removed.
+         */
+        boolean remove(City city) {
+            if (!contains(city)) {
+                return false;
+            }
+
+            ArrayList<BasicCity> cities = stateForWrite(city.getCountry(), city.getState());
+            cities.removeIf(storedCity -> storedCity.getName().equals(city.getName()));
+            // Check that we still have some cities in this state.
+            if (cities.isEmpty()) {
+                // State is empty, delete the state.
+                countryForWrite(city.getCountry()).remove(city.getState());
+                copiedStates.get(city.getCountry()).remove(city.getState());
+                // Check that the country still has some states in it.
+                if (countries.get(city.getCountry()).isEmpty()) {
+                    // Country contains no states, remove the country.
+                    ownCountries().remove(city.getCountry());
+                    copiedCountries.remove(city.getCountry());
+                    copiedStates.remove(city.getCountry());
+                }
+            }
+            version++;
+            return true;
+        }
+
+        /**
+         * Gets the version of the snapshot being built.
+         * @return the number of changes applied so far.
+         */
+        long version() {
+            return version;
+        }
+
+        /**
+         * Throws away everything in the snapshot being built and starts again from another snapshot.
+         * @param replacement the snapshot to start from.
+         */
+        void replaceAll(CitySnapshot replacement) {
+            countries = replacement.countries;
+            ownCountries = null;
+            copiedCountries.clear();
+            copiedStates.clear();
+            version = replacement.version;
+        }
+
+        /**
+         * Gets the countries of the snapshot being built.
+         * @return a read-only view of the countries.
+         */
+        Map<String, Map<String, List<BasicCity>>> countries() {
+            return Collections.unmodifiableMap(countries);
+        }
+
+        /**
+         * Swaps the map holding a country's states for another with the same contents,
+         * used to move countries between the heap and disk. The version doesn't change.
+         * @param country the country to replace.
+         * @param states the new map of states.
+         */
+        void replaceCountry(String country, Map<String, List<BasicCity>> states) {
+            ownCountries().put(country, states);
+            // Later changes must copy from the new map.
+            copiedCountries.remove(country);
+            copiedStates.remove(country);
+        }
+
+        /**
+         * Publishes the changes made so far as a new snapshot.
+         * The builder must not be used afterwards.
+         * @return the new snapshot.
+         */
+        CitySnapshot build() {
+            if (ownCountries == null) {
+                // Nothing was changed, share the base snapshot's map.
+                return new CitySnapshot(countries, version);
+            }
+            return new CitySnapshot(Collections.unmodifiableMap(ownCountries), version);
+        }
+
+        /**
+         * Gets the countries map that is safe to modify, copying the base snapshot's on first use.
+         * @return the copied map of countries.
+         */
+        private HashMap<String, Map<String, List<BasicCity>>> ownCountries() {
+            if (ownCountries == null) {
+                ownCountries = new HashMap<>(countries);
+                countries = ownCountries;
+            }
+            return ownCountries;
+        }
+
+        /**
+         * Gets a country map that is safe to modify, copying it on first use.
+         * @param country the country to modify.
+         * @return the copied map of states in the country.
+         */
+        private HashMap<String, List<BasicCity>> countryForWrite(String country) {
+            HashMap<String, List<BasicCity>> states = copiedCountries.get(country);
+            if (states == null) {
+                // Copy the shared map, creating the country if it doesn't exist.
+                Map<String, List<BasicCity>> shared = countries.get(country);
+                states = shared == null ? new HashMap<>() : new HashMap<>(shared);
+                copiedCountries.put(country, states);
+                ownCountries().put(country, Collections.unmodifiableMap(states));
+            }
+            return states;
+        }
+
+        /**
+         * Gets a state list that is safe to modify, copying it on first use.
+         * @param country the country the state is in.
+         * @param state the state to modify.
+         * @return the copied list of cities in the state.
+         */
+        private ArrayList<BasicCity> stateForWrite(String country, String state) {
+            HashMap<String, ArrayList<BasicCity>> statesInCountry =
+                    copiedStates.computeIfAbsent(country, key -> new HashMap<>());
+            ArrayList<BasicCity> cities = statesInCountry.get(state);
+            if (cities == null) {
+                // Copy the shared list, creating the state if it doesn't exist.
+                HashMap<String, List<BasicCity>> states = countryForWrite(country);
+                List<BasicCity> shared = states.get(state);
+                cities = shared == null ? new ArrayList<>() : new ArrayList<>(shared);
+                statesInCountry.put(state, cities);
+                states.put(state, Collections.unmodifiableList(cities));
+            }
+            return cities;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.cscserver.Data;
+
+import com.example.cscserver.Model.BasicCity;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.AbstractMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The states of a country that has been evicted to disk. It stands in for the
+ * country's map in a snapshot and decodes the country from disk each time it is
+ * used, so occasional scans don't pull cold countries back onto the heap.
+ * @author Karl Clifford
+ * @version 1.0.0
+ */
+final class ColdCountry extends AbstractMap<String, List<BasicCity>> {
+
+    /**
+     * The file the country is stored in.
+     */
+    private final CountrySegmentStore store;
+
+    /**
+     * Where the country starts in the file.
+     */
+    private final long offset;
+
+    /**
+     * The encoded size of the country.
+     */
+    private final int length;
+
+    /**
+     * The number of cities in the country.
+     */
+    private final int cityCount;
+
+    /**
+     * The constructor of this class.
+     * @param store the file the country is stored in.
+     * @param offset where the country starts in the file.
+     * @param length the encoded size of the country.
+     * @param cityCount the number of cities in the country.
+     */
+    ColdCountry(CountrySegmentStore store, long offset, int length, int cityCount) {
+        this.store = store;
+        this.offset = offset;
+        this.length = length;
+        this.cityCount = cityCount;
+    }
+
+    /**
+     * Reads the country from disk.
+     * @return a read-only map of the states and cities in the country.
+     */
+    Map<String, List<BasicCity>> load() {
+        return store.read(offset, length);
+    }
+
+    /**
+     * Copies the country to another file without decoding it.
+     * @param target the file to copy it to.
+     * @return the country in the other file.
+     */
+    ColdCountry copyTo(CountrySegmentStore target) {
+        try {
+            return target.append(store.readBytes(offset, length), cityCount);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Checks which file the country is stored in.
+     * @param file the file.
+     * @return true if the country is stored in the file.
+     */
+    boolean isStoredIn(CountrySegmentStore file) {
+        return store == file;
+    }
+
+    /**
+     * Gets the encoded size of the country.
+     * @return the size in bytes.
+     */
+    int getLength() {
+        return length;
+    }
+
+    /**
+     * Gets the number of cities in the country without reading it from disk.
+     * @return the number of cities.
+     */
+    int getCityCount() {
+        return cityCount;
+    }
+
+    /**
+     * Gets the states in the country, reading it from disk.
+     * @return the states and their cities.
+     */
+    @Override
+    public Set<Entry<String, List<BasicCity>>> entrySet() {
+        return load().entrySet();
+    }
+
+    /**
+     * Gets the cities in a state, reading the country from disk.
+     * @param state the state to find.
+     * @return the cities in the state or null if it doesn't exist.
+     */
+    @Override
+    public List<BasicCity> get(Object state) {
+        return load().get(state);
+    }
+
+    /**
+     * Checks if a state exists, reading the country from disk.
+     * @param state the state to find.
+     * @return true if the state exists.
+     */
+    @Override
+    public boolean containsKey(Object state) {
+        return load().containsKey(state);
+    }
+
+    /**
+     * Checks if the country has no states, without reading it from disk.
+     * @return always false.
+     */
+    @Override
+    public boolean isEmpty() {
+        // Empty countries are removed, never evicted.
+        return false;
+    }
+}
@@ -0,0 +1,229 @@
+package com.example.cscserver.Data;
+
+import com.example.cscserver.Model.BasicCity;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An append-only file holding the encoded states and cities of evicted countries.
+ * Segments are written by the writer thread and can be read by any thread. Old
+ * snapshots can still refer to a store after it has been replaced, so the file is
+ * closed and deleted once nothing refers to the store, or when it is closed.
+ * @author Karl Clifford
+ * @version 1.0.0
+ */
+final class CountrySegmentStore implements AutoCloseable {
+
+    /**
+     * Handles server logs.
+     */
+    private static final Logger LOG =
+            LoggerFactory.getLogger(CountrySegmentStore.class);
+
+    /**
+     * Closes the files of stores nothing refers to any more.
+     */
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    /**
+     * The segment file.
+     */
+    private final FileChannel channel;
+
+    /**
+     * Closes and deletes the segment file, at most once.
+     */
+    private final Cleaner.Cleanable cleanable;
+
+    /**
+     * The offset the next segment is written at, only touched by the writer thread.
+     */
+    private long end = 0;
+
+    /**
+     * Counts segments read back from disk.
+     */
+    private final Counter faults = Metrics.counter("csc.tiering.faults");
+
+    /**
+     * Times reading and decoding segments.
+     */
+    private final Timer faultLatency = Metrics.timer("csc.tiering.fault.latency");
+
+    /**
+     * The constructor of this class, creates a new segment file that is deleted on close.
+     * @param directory the directory to create the file in.
+     * @throws IOException if the file can't be created.
+     */
+    CountrySegmentStore(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        Path file = Files.createTempFile(directory, "countries", ".seg");
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.DELETE_ON_CLOSE);
+        cleanable = CLEANER.register(this, new FileCloser(channel));
+    }
+
+    /**
+     * Gets the size of the file, including segments nothing refers to any more.
+     * @return the size in bytes.
+     */
+    long size() {
+        return end;
+    }
+
+    /**
+     * Appends a country to the file.
+     * @param states the states and cities in the country.
+     * @return a map that reads the country back from the file when used.
+     */
+    ColdCountry write(Map<String, List<BasicCity>> states) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        int cityCount = 0;
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(states.size());
+            for (Map.Entry<String, List<BasicCity>> state : states.entrySet()) {
+                BinaryStrings.write(out, state.getKey());
+                out.writeInt(state.getValue().size());
+                for (BasicCity city : state.getValue()) {
+                    BinaryStrings.write(out, city.getName());
+                    BinaryStrings.write(out, city.getFoundingDate());
+                }
+                cityCount += state.getValue().size();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return append(bytes.toByteArray(), cityCount);
+    }
+
+    /**
+     * Appends an encoded country to the file.
+     * @param bytes the encoded states and cities.
+     * @param cityCount the number of cities in the country.
+     * @return a map that reads the country back from the file when used.
+     */
+    ColdCountry append(byte[] bytes, int cityCount) {
+        long offset = end;
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        try {
+            while (buffer.hasRemaining()) {
+                end += channel.write(buffer, end);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new ColdCountry(this, offset, bytes.length, cityCount);
+    }
+
+    /**
+     * Reads a country back from the file.
+     * @param offset where the country starts in the file.
+     * @param length the encoded size of the country.
+     * @return a read-only map of the states and cities in the country.
+     */
+    Map<String, List<BasicCity>> read(long offset, int length) {
+        long start = System.nanoTime();
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(readBytes(offset, length)));
+            int stateCount = in.readInt();
+            HashMap<String, List<BasicCity>> states = new HashMap<>(stateCount * 2);
+            for (int i = 0; i < stateCount; i++) {
+                String state = BinaryStrings.read(in);
+                int cityCount = in.readInt();
+                ArrayList<BasicCity> cities = new ArrayList<>(cityCount);
+                for (int j = 0; j < cityCount; j++) {
+                    cities.add(new BasicCity(BinaryStrings.read(in), BinaryStrings.read(in)));
+                }
+                states.put(state, Collections.unmodifiableList(cities));
+            }
+            return Collections.unmodifiableMap(states);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            faults.increment();
+            faultLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Reads an encoded country from the file without decoding it.
+     * @param offset where the country starts in the file.
+     * @param length the encoded size of the country.
+     * @return the encoded states and cities.
+     * @throws IOException if the file can't be read.
+     */
+    byte[] readBytes(long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, offset + buffer.position());
+            if (read < 0) {
+                throw new IOException("Segment at " + offset + " is truncated");
+            }
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Closes and deletes the segment file.
+     * @throws IOException if the file can't be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        cleanable.clean();
+    }
+
+    /**
+     * Closes a segment file, it must not refer to its store or the store would never be cleaned.
+     */
+    private static final class FileCloser implements Runnable {
+
+        /**
+         * The segment file.
+         */
+        private final FileChannel channel;
+
+        /**
+         * The constructor of this class.
+         * @param channel the segment file.
+         */
+        private FileCloser(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Closes and deletes the segment file.
+         */
+        @Override
+        public void run() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOG.error("Error closing a tiering segment file: " + e);
+            }
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package com.example.cscserver.Data;
+
+import com.example.cscserver.Model.BasicCity;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.WeakReference;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the most recently used countries on the heap and evicts the rest to a
+ * segment file once the number of resident cities goes over budget. Evictions and
+ * promotions only happen on the writer thread, as part of building a snapshot.
+ * Countries that change are written again when they are evicted, so once most of
+ * the file is no longer used the countries still on disk are copied to a new file.
+ * @author Karl Clifford
+ * @version 1.0.0
+ */
+final class CountryTiers implements AutoCloseable {
+
+    /**
+     * Handles server logs.
+     */
+    private static final Logger LOG =
+            LoggerFactory.getLogger(CountryTiers.class);
+
+    /**
+     * The directory segment files are created in.
+     */
+    private final Path directory;
+
+    /**
+     * Where evicted countries are stored, replaced by the writer thread when compacted.
+     */
+    private CountrySegmentStore store;
+
+    /**
+     * Replaced segment files that old snapshots may still be reading, closed with this.
+     */
+    private final ArrayList<WeakReference<CountrySegmentStore>> retired = new ArrayList<>();
+
+    /**
+     * The most cities kept on the heap.
+     */
+    private final long maxResidentCities;
+
+    /**
+     * The smallest segment file that is compacted.
+     */
+    private final long minCompactBytes;
+
+    /**
+     * The logical time each country was last used, larger is more recent.
+     */
+    private final ConcurrentHashMap<String, Long> lastAccess = new ConcurrentHashMap<>();
+
+    /**
+     * Hands out logical access times.
+     */
+    private final AtomicLong clock = new AtomicLong();
+
+    /**
+     * Promoted countries that haven't changed since, so they can be evicted again without rewriting them.
+     * Only touched by the writer thread.
+     */
+    private final HashMap<String, CleanCopy> cleanCopies = new HashMap<>();
+
+    /**
+     * The number of countries on the heap.
+     */
+    private final AtomicLong residentCountries = Metrics.gauge("csc.tiering.resident.countries", new AtomicLong());
+
+    /**
+     * The number of countries on disk.
+     */
+    private final AtomicLong coldCountries = Metrics.gauge("csc.tiering.cold.countries", new AtomicLong());
+
+    /**
+     * The number of cities on the heap.
+     */
+    private final AtomicLong residentCities = Metrics.gauge("csc.tiering.resident.cities", new AtomicLong());
+
+    /**
+     * The number of cities on disk.
+     */
+    private final AtomicLong coldCities = Metrics.gauge("csc.tiering.cold.cities", new AtomicLong());
+
+    /**
+     * The size of the segment file, including countries that are no longer used.
+     */
+    private final AtomicLong segmentBytes = Metrics.gauge("csc.tiering.segment.bytes", new AtomicLong());
+
+    /**
+     * Counts countries evicted to disk.
+     */
+    private final Counter evictions = Metrics.counter("csc.tiering.evictions");
+
+    /**
+     * Counts segment files replaced by a compacted copy.
+     */
+    private final Counter compactions = Metrics.counter("csc.tiering.compactions");
+
+    /**
+     * The constructor of this class.
+     * @param directory the directory to keep evicted countries in.
+     * @param maxResidentCities the most cities kept on the heap.
+     * @param minCompactBytes the smallest segment file that is compacted once more than half of it is unused.
+     * @throws IOException if the segment file can't be created.
+     */
+    CountryTiers(Path directory, long maxResidentCities, long minCompactBytes) throws IOException {
+        this.directory = directory;
+        this.store = new CountrySegmentStore(directory);
+        this.maxResidentCities = maxResidentCities;
+        this.minCompactBytes = minCompactBytes;
+    }
+
+    /**
+     * Records that a country was used.
+     * @param country the country.
+     */
+    void touch(String country) {
+        lastAccess.put(country, clock.incrementAndGet());
+    }
+
+    /**
+     * Moves a cold country back onto the heap.
+     * @param builder the snapshot being built.
+     * @param country the country to promote.
+     */
+    void promote(CitySnapshot.Builder builder, String country) {
+        Map<String, List<BasicCity>> states = builder.countries().get(country);
+        if (states instanceof ColdCountry) {
+            ColdCountry cold = (ColdCountry) states;
+            Map<String, List<BasicCity>> loaded = cold.load();
+            builder.replaceCountry(country, loaded);
+            cleanCopies.put(country, new CleanCopy(loaded, cold));
+        }
+    }
+
+    /**
+     * Evicts the least recently used countries until the resident cities are within budget.
+     * @param builder the snapshot being built.
+     */
+    void evict(CitySnapshot.Builder builder) {
+        Map<String, Map<String, List<BasicCity>>> countries = builder.countries();
+        ArrayList<String> hot = new ArrayList<>();
+        HashMap<String, Integer> sizes = new HashMap<>();
+        long resident = 0;
+        long cold = 0;
+        long citiesOnDisk = 0;
+        long liveBytes = 0;
+
+        for (Map.Entry<String, Map<String, List<BasicCity>>> country : countries.entrySet()) {
+            if (country.getValue() instanceof ColdCountry) {
+                cold++;
+                citiesOnDisk += ((ColdCountry) country.getValue()).getCityCount();
+                liveBytes += ((ColdCountry) country.getValue()).getLength();
+                continue;
+            }
+            int size = 0;
+            for (List<BasicCity> cities : country.getValue().values()) {
+                size += cities.size();
+            }
+            hot.add(country.getKey());
+            sizes.put(country.getKey(), size);
+            resident += size;
+
+            // Forget clean copies that have since been changed.
+            CleanCopy clean = cleanCopies.get(country.getKey());
+            if (clean != null && clean.states != country.getValue()) {
+                cleanCopies.remove(country.getKey());
+            }
+        }
+
+        // Forget the access times and clean copies of countries that no longer exist.
+        lastAccess.keySet().retainAll(countries.keySet());
+        cleanCopies.keySet().retainAll(countries.keySet());
+
+        if (resident > maxResidentCities) {
+            // Evict the least recently used countries first.
+            hot.sort(Comparator.comparingLong(country -> lastAccess.getOrDefault(country, 0L)));
+            for (String country : hot) {
+                if (resident <= maxResidentCities) {
+                    break;
+                }
+                Map<String, List<BasicCity>> states = countries.get(country);
+                CleanCopy clean = cleanCopies.remove(country);
+                // Reuse the copy already on disk if the country hasn't changed since it was promoted.
+                ColdCountry evicted = clean != null && clean.states == states ? clean.cold : store.write(states);
+                builder.replaceCountry(country, evicted);
+                resident -= sizes.get(country);
+                citiesOnDisk += sizes.get(country);
+                liveBytes += evicted.getLength();
+                cold++;
+                evictions.increment();
+            }
+        }
+
+        if (store.size() >= minCompactBytes && store.size() > liveBytes * 2) {
+            compact(builder);
+        }
+
+        segmentBytes.set(store.size());
+        residentCountries.set(countries.size() - cold);
+        coldCountries.set(cold);
+        residentCities.set(resident);
+        coldCities.set(citiesOnDisk);
+    }
+
+    /**
+     * Copies the countries on disk to a new segment file, leaving behind the ones no longer used.
+     * The old file is deleted once no snapshot refers to it.
+     * @param builder the snapshot being built.
+     */
+    private void compact(CitySnapshot.Builder builder) {
+        long before = store.size();
+        CountrySegmentStore compacted;
+        try {
+            compacted = new CountrySegmentStore(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        // Copy everything before changing the snapshot, so a failed copy leaves it untouched.
+        HashMap<String, ColdCountry> copies = new HashMap<>();
+        try {
+            for (Map.Entry<String, Map<String, List<BasicCity>>> country : builder.countries().entrySet()) {
+                if (country.getValue() instanceof ColdCountry) {
+                    copies.put(country.getKey(), ((ColdCountry) country.getValue()).copyTo(compacted));
+                }
+            }
+        } catch (UncheckedIOException e) {
+            closeQuietly(compacted);
+            throw e;
+        }
+        for (Map.Entry<String, ColdCountry> copy : copies.entrySet()) {
+            builder.replaceCountry(copy.getKey(), copy.getValue());
+        }
+
+        // The clean copies refer to the old file.
+        cleanCopies.clear();
+        retired.removeIf(old -> old.get() == null);
+        retired.add(new WeakReference<>(store));
+        store = compacted;
+        compactions.increment();
+        LOG.info("Compacted the tiering segment file from " + before + " to " + store.size() + " bytes");
+    }
+
+    /**
+     * Gets the size of the segment file, including countries that are no longer used.
+     * @return the size in bytes.
+     */
+    long getSegmentBytes() {
+        return store.size();
+    }
+
+    /**
+     * Closes and deletes the segment files.
+     * @throws IOException if the current file can't be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        for (WeakReference<CountrySegmentStore> old : retired) {
+            CountrySegmentStore oldStore = old.get();
+            if (oldStore != null) {
+                closeQuietly(oldStore);
+            }
+        }
+        retired.clear();
+        store.close();
+    }
+
+    /**
+     * Closes a segment file, logging rather than throwing if it can't be closed.
+     * @param file the segment file.
+     */
+    private static void closeQuietly(CountrySegmentStore file) {
+        try {
+            file.close();
+        } catch (IOException e) {
+            LOG.error("Error closing a tiering segment file: " + e);
+        }
+    }
+
+    /**
+     * A promoted country and the copy of it still on disk.
+     */
+    private static final class CleanCopy {
+
+        /**
+         * The country's states as promoted onto the heap.
+         */
+        private final Map<String, List<BasicCity>> states;
+
+        /**
+         * The same states on disk.
+         */
+        private final ColdCountry cold;
+
+        /**
+         * The constructor of this class.
+         * @param states the country's states as promoted onto the heap.
+         * @param cold the same states on disk.
+         */
+        private CleanCopy(Map<String, List<BasicCity>> states, ColdCountry cold) {
+            this.states = states;
+            this.cold = cold;
+        }
+    }
+}
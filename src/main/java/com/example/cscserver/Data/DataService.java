@@ -4,29 +4,55 @@ import com.example.cscserver.Model.BasicCity;
 import com.example.cscserver.Model.City;
 import com.example.cscserver.configuration.CityComparator;
 import com.example.cscserver.configuration.CityWrapper;
-import com.google.gson.Gson;
+import com.example.cscserver.configuration.WireFormat;
+import com.example.cscserver.profiling.CityQueryEvent;
+import com.example.cscserver.profiling.QueueWaitEvent;
+import com.example.cscserver.profiling.WriterBatchEvent;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.PriorityQueue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
 /**
  * This class stores and handles data stored in the server asynchronously.
+ * By default all changes are queued and applied in batches by a single writer thread,
+ * which publishes each batch as an immutable snapshot that readers use without locking.
+ * In lock mode each request thread applies its own change while holding a lock instead,
+ * which avoids handing every change to another thread on hosts with few CPUs.
  * @author Karl Clifford
  * @version 1.0.0
  */
 @Service
 public class DataService {
 
+    /**
+     * The header carrying the version of the data a response was produced from.
+     */
+    public static final String SEQUENCE_HEADER = "X-Csc-Sequence";
+
     /**
      * Handles server logs.
      */
@@ -34,18 +60,146 @@ public class DataService {
             LoggerFactory.getLogger(DataService.class);
 
     /**
-     * Stores country, states and cities.
+     * How changes are applied.
+     */
+    public enum WriteMode {
+        /**
+         * Changes are queued and applied in batches by one writer thread, best with several CPUs.
+         */
+        WRITER,
+        /**
+         * Each request thread applies its own change while holding a lock, best with one or two CPUs.
+         */
+        LOCK
+    }
+
+    /**
+     * The latest published view of the countries, states and cities, replaced by the writer thread.
+     */
+    private volatile CitySnapshot snapshot = CitySnapshot.EMPTY;
+
+    /**
+     * The maximum number of mutations waiting to be applied.
      */
-    private final HashMap<String, HashMap<String, ArrayList<BasicCity>>> data = new HashMap<>();
+    private static final int QUEUE_CAPACITY = 1024;
 
     /**
-     * Whether data is being written.
+     * The maximum number of mutations applied before a new snapshot is published.
      */
-    private boolean writing = false;
+    private static final int MAX_BATCH_SIZE = 256;
+
+    /**
+     * How long a request thread sleeps while the mutation queue is full.
+     */
+    private static final long FULL_QUEUE_BACKOFF_NANOS = 50_000L;
+
+    /**
+     * How often a reader checks whether the version it is waiting for has been published.
+     */
+    private static final long VERSION_POLL_NANOS = 500_000L;
+
+    /**
+     * How long shutdown waits for the writer thread to finish its batch.
+     */
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 10_000L;
+
+    /**
+     * Mutations waiting to be applied by the writer thread.
+     */
+    private final MutationRing mutations = new MutationRing(QUEUE_CAPACITY);
+
+    /**
+     * The only thread that modifies the data, null in lock mode.
+     */
+    private final Thread writer;
+
+    /**
+     * Held while a change is applied in lock mode.
+     */
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    /**
+     * Coalesces identical reads that arrive while one is being computed.
+     */
+    private final SingleFlight<List<Object>, ResponseEntity<?>> reads = new SingleFlight<>("csc.reads");
+
+    /**
+     * Whether the writer thread should keep running, or in lock mode whether changes are still accepted.
+     */
+    private volatile boolean running = true;
+
     /**
-     * Whether data is being deleted.
+     * Moves rarely used countries between the heap and disk, null if tiering is off.
      */
-    private boolean deleting = false;
+    private final CountryTiers tiers;
+
+    /**
+     * Told about every batch of changes once it has been published.
+     */
+    private final CopyOnWriteArrayList<Consumer<ChangeBatch>> changeListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * The changes made by the batch being applied, only used by the thread applying it.
+     */
+    private final ArrayList<Change> changes = new ArrayList<>();
+
+    /**
+     * Whether changes are only accepted from the leader.
+     */
+    private volatile boolean readOnly = false;
+
+    /**
+     * The constructor of this class, starts the writer thread with every country kept on the heap.
+     */
+    public DataService() {
+        this(WriteMode.WRITER);
+    }
+
+    /**
+     * The constructor of this class, with every country kept on the heap.
+     * @param mode how changes are applied.
+     */
+    public DataService(WriteMode mode) {
+        this(mode, null);
+    }
+
+    /**
+     * The constructor used by Spring, starts the writer thread.
+     * @param tiering whether to evict rarely used countries to disk.
+     * @param maxResidentCities the most cities kept on the heap when tiering.
+     * @param tieringDirectory the directory evicted countries are kept in, blank for the temp directory.
+     * @param compactMinBytes the smallest segment file that is compacted once more than half of it is unused.
+     * @param writeMode writer to apply changes on a writer thread or lock to apply them on the request thread.
+     * @throws IOException if the tiering segment file can't be created.
+     */
+    @Autowired
+    public DataService(@Value("${csc.tiering.enabled:false}") boolean tiering,
+                       @Value("${csc.tiering.max-resident-cities:1000000}") long maxResidentCities,
+                       @Value("${csc.tiering.directory:}") String tieringDirectory,
+                       @Value("${csc.tiering.compact-min-bytes:67108864}") long compactMinBytes,
+                       @Value("${csc.data.write-mode:writer}") String writeMode)
+            throws IOException {
+        this(WriteMode.valueOf(writeMode.toUpperCase(Locale.ROOT)),
+                tiering ? new CountryTiers(tieringDirectory.isBlank()
+                        ? Path.of(System.getProperty("java.io.tmpdir"), "cscserver")
+                        : Path.of(tieringDirectory), maxResidentCities, compactMinBytes) : null);
+    }
+
+    /**
+     * Starts the writer thread, unless changes are applied in lock mode.
+     * @param mode how changes are applied.
+     * @param tiers moves rarely used countries between the heap and disk, null to keep them all on the heap.
+     */
+    private DataService(WriteMode mode, CountryTiers tiers) {
+        this.tiers = tiers;
+        if (mode == WriteMode.LOCK) {
+            writer = null;
+            return;
+        }
+        writer = new Thread(this::applyMutations, "csc-data-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
 
     /**
      * Stores a new city.
@@ -53,100 +207,519 @@ public class DataService {
      * @return response code 204 if success, 409 due to bad formatting or 404 if the city doesn't exist.
      * @throws InterruptedException if the operation is cancelled.
      */
-    @Async
-    public synchronized CompletableFuture<ResponseEntity<?>> storeCity(City city)
+    public CompletableFuture<ResponseEntity<?>> storeCity(City city)
             throws InterruptedException {
-        ResponseEntity<?> responseEntity;
+        checkWritable();
+        return enqueue(new Mutation(Mutation.Kind.STORE, city));
+    }
 
-        // Check the city doesn't already exist.
-        if (!hasCity(city)) {
-            // If another thread is modifying the data, wait.
-            while (deleting) {
-                wait();
-            }
+    /**
+     * Deletes a stored city.
+     * @param name the name of the city to target.
+     * @param state the name of the state to target.
+     * @param country the name of the country to target.
+     * @return response code 204 if success or 404 if the city doesn't exist.
+     * @throws InterruptedException if the operation is cancelled.
+     */
+    public CompletableFuture<ResponseEntity<?>> removeCity(String name, String state, String country)
+        throws InterruptedException {
+        checkWritable();
+        return enqueue(new Mutation(Mutation.Kind.REMOVE, new City(name, state, country, null)));
+    }
 
-            // Prevent other threads from making changes to the data.
-            writing = true;
-            // Check the country exists.
-            if (!data.containsKey(city.getCountry())) {
-                // Country doesn't exist so add it.
-                data.put(city.getCountry(), new HashMap<>());
+    /**
+     * Stores many cities at once, cities that already exist are skipped.
+     * Either every new city is stored or, if the future fails, none of them are.
+     * @param cities the cities to store.
+     * @return the number of cities that were stored.
+     * @throws InterruptedException if the operation is cancelled.
+     */
+    public CompletableFuture<Integer> storeCities(List<City> cities)
+            throws InterruptedException {
+        checkWritable();
+        return enqueue(new Mutation(cities)).thenApply(response -> {
+            if (response.getStatusCode() != HttpStatus.OK) {
+                throw new IllegalStateException("None of the " + cities.size() + " cities were stored, status "
+                        + response.getStatusCode().value());
             }
+            return (Integer) response.getBody();
+        });
+    }
 
-            // Check the state exists.
-            if (!data.get(city.getCountry()).containsKey(city.getState())) {
-                // The state doesn't exist so add it.
-                data.get(city.getCountry()).put(city.getState(), new ArrayList<>());
+    /**
+     * Checks if this server is a read replica.
+     * @return true if changes are only accepted from the leader.
+     */
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    /**
+     * Waits until the data includes a given version, so a client can read its own writes.
+     * @param version the version the client needs to see.
+     * @param timeoutMillis the longest to wait.
+     * @return true if the version has been published, false if the wait timed out.
+     * @throws InterruptedException if the operation is cancelled.
+     */
+    public boolean awaitVersion(long version, long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutMillis * 1_000_000L;
+        while (snapshot.getVersion() < version) {
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            LockSupport.parkNanos(VERSION_POLL_NANOS);
+            if (Thread.interrupted()) {
+                throw new InterruptedException("Interrupted while waiting for version " + version);
             }
+        }
+        return true;
+    }
 
-            // Add the city.
-            data.get(city.getCountry()).get(city.getState()).add(new BasicCity(city.getName(), city.getFoundingDate()));
+    /**
+     * Gets the latest published snapshot of the data.
+     * @return an immutable view of every country, state and city.
+     */
+    CitySnapshot snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Stops accepting changes from clients, only the leader's changes are applied from now on.
+     */
+    void becomeReplica() {
+        readOnly = true;
+    }
 
-            // Wake up waiting threads.
-            writing = false;
-            notifyAll();
+    /**
+     * Replaces all the data with a snapshot sent by the leader.
+     * @param leaderSnapshot the leader's snapshot.
+     * @return response code 204 once the snapshot has been installed.
+     * @throws InterruptedException if the operation is cancelled.
+     */
+    CompletableFuture<ResponseEntity<?>> install(CitySnapshot leaderSnapshot) throws InterruptedException {
+        return enqueue(new Mutation(leaderSnapshot));
+    }
+
+    /**
+     * Applies a batch of changes sent by the leader.
+     * @param batch the leader's changes.
+     * @return response code 204 once the changes have been applied or 500 if they don't follow on from this data.
+     * @throws InterruptedException if the operation is cancelled.
+     */
+    CompletableFuture<ResponseEntity<?>> replicate(ChangeBatch batch) throws InterruptedException {
+        return enqueue(new Mutation(batch));
+    }
 
-            // Inform the user the operation was successful.
-            responseEntity = ResponseEntity.status(HttpStatus.NO_CONTENT).body(null);
+    /**
+     * Starts telling a listener about every batch of changes, on the writer thread once the batch is published.
+     * The listener must not block.
+     * @param listener the listener.
+     */
+    void addChangeListener(Consumer<ChangeBatch> listener) {
+        changeListeners.add(listener);
+    }
 
+    /**
+     * Stops telling a listener about changes.
+     * @param listener the listener.
+     */
+    void removeChangeListener(Consumer<ChangeBatch> listener) {
+        changeListeners.remove(listener);
+    }
 
+    /**
+     * Stops the writer thread, mutations still queued are not applied and their callers are failed.
+     */
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        if (writer == null) {
+            // Wait for the change being applied, no more start once running is false.
+            writeLock.lock();
+            writeLock.unlock();
         } else {
-            // The city already exists, return 409 error.
-            responseEntity = ResponseEntity.status(HttpStatus.CONFLICT).body(null);
+            LockSupport.unpark(writer);
+            try {
+                // The writer may be part way through a batch that still uses the segment file.
+                writer.join(SHUTDOWN_TIMEOUT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (writer.isAlive()) {
+                LOG.error("The writer thread didn't stop within " + SHUTDOWN_TIMEOUT_MILLIS + "ms");
+                return;
+            }
+
+            Mutation pending;
+            while ((pending = mutations.poll()) != null) {
+                pending.getResult().completeExceptionally(shutDown());
+            }
+        }
+        if (tiers != null) {
+            try {
+                tiers.close();
+            } catch (IOException e) {
+                LOG.error("Error closing the tiering segment file: " + e);
+            }
         }
+    }
 
-        return CompletableFuture.completedFuture(responseEntity);
+    /**
+     * Creates the error given to callers whose changes arrive after shutdown.
+     * @return the error.
+     */
+    private static IllegalStateException shutDown() {
+        return new IllegalStateException("The data service has shut down");
     }
 
     /**
-     * Deletes a stored city.
-     * @param name the name of the city to target.
-     * @param state the name of the state to target.
-     * @param country the name of the country to target.
-     * @return response code 204 if success or 404 if the city doesn't exist.
-     * @throws InterruptedException if the operation is cancelled.
+     * Rejects changes from clients on read replicas.
+     * @throws IllegalStateException if this server is a read replica.
      */
-    @Async
-    public synchronized CompletableFuture<ResponseEntity<?>> removeCity(String name, String state, String country)
-        throws InterruptedException {
-        ResponseEntity<?> responseEntity =
-                new ResponseEntity<>(HttpStatus.NOT_FOUND);
+    private void checkWritable() {
+        if (readOnly) {
+            throw new IllegalStateException("This server is a read replica, send changes to the leader");
+        }
+    }
 
-        City city = new City(name, state, country, null);
-
-        // Check that the city exists.
-        if (hasCity(city)) {
-            // If another thread is modifying the data, wait.
-            while (writing) {
-                wait();
-            }
-            // The city exits, remove it.
-            deleting = true;
-
-            // Try and find the city in the state.
-            // We found the city so remove it.
-            data.get(city.getCountry())
-                    .get(city.getState()).removeIf(myCity -> myCity.getName().equals(city.getName()));
-            // Check that we still have some states in this country.
-            if (data.get(city.getCountry()).get(city.getState()).isEmpty()) {
-                // State is empty, delete the state.
-                data.get(city.getCountry()).remove(city.getState());
-                // Check that the country still has some states in it.
-                if (data.get(city.getCountry()).isEmpty()) {
-                    // Country contains no states, remove the country.
-                    data.remove(city.getCountry());
+    /**
+     * Hands a mutation to the writer thread, or applies it straight away in lock mode.
+     * @param mutation the mutation to apply.
+     * @return completed once the mutation has been applied.
+     * @throws InterruptedException if the operation is cancelled while the queue is full or the lock is held.
+     */
+    private CompletableFuture<ResponseEntity<?>> enqueue(Mutation mutation) throws InterruptedException {
+        if (writer == null) {
+            writeLock.lockInterruptibly();
+            try {
+                applyLocked(mutation);
+            } finally {
+                writeLock.unlock();
+            }
+            return mutation.getResult();
+        }
+
+        // If the queue is full, back off until the writer catches up.
+        if (!mutations.offer(mutation)) {
+            QueueWaitEvent event = new QueueWaitEvent();
+            event.begin();
+            while (!mutations.offer(mutation)) {
+                LockSupport.unpark(writer);
+                LockSupport.parkNanos(FULL_QUEUE_BACKOFF_NANOS);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException("Interrupted while waiting for the mutation queue");
+                }
+            }
+            event.mutation = mutation.getKind().name();
+            event.commit();
+        }
+        // Wake the writer in case it is idle.
+        LockSupport.unpark(writer);
+        return mutation.getResult();
+    }
+
+    /**
+     * Applies one mutation as a batch of its own, the caller must hold the write lock.
+     * @param mutation the mutation to apply.
+     */
+    private void applyLocked(Mutation mutation) {
+        if (!running) {
+            mutation.getResult().completeExceptionally(shutDown());
+            return;
+        }
+        applyBatch(List.of(mutation), new ArrayList<>(1));
+    }
+
+    /**
+     * The writer thread loop, drains the queue and applies mutations in batches.
+     */
+    private void applyMutations() {
+        ArrayList<Mutation> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        ArrayList<ResponseEntity<?>> responses = new ArrayList<>(MAX_BATCH_SIZE);
+
+        while (running) {
+            // Collect everything queued so far, up to the batch limit.
+            Mutation mutation;
+            while (batch.size() < MAX_BATCH_SIZE && (mutation = mutations.poll()) != null) {
+                batch.add(mutation);
+            }
+
+            if (batch.isEmpty()) {
+                // Nothing to do, sleep until a request thread wakes us.
+                LockSupport.park(this);
+                continue;
+            }
+
+            applyBatch(batch, responses);
+            batch.clear();
+            responses.clear();
+        }
+    }
+
+    /**
+     * Applies a batch of mutations to a copy of the data and publishes it as one new snapshot,
+     * then completes each mutation's caller.
+     * @param batch the mutations to apply.
+     * @param responses an empty list to collect the responses in.
+     */
+    private void applyBatch(List<Mutation> batch, ArrayList<ResponseEntity<?>> responses) {
+        try {
+            WriterBatchEvent event = new WriterBatchEvent();
+            event.begin();
+            CitySnapshot.Builder builder = snapshot.toBuilder();
+            for (Mutation pending : batch) {
+                responses.add(apply(builder, pending));
+            }
+            if (tiers != null) {
+                // Keep the heap within budget before publishing.
+                evict(builder);
+            }
+            snapshot = builder.build();
+            event.batchSize = batch.size();
+            event.version = snapshot.getVersion();
+            event.commit();
+
+            // Tell the listeners, followers must see every change in order.
+            if (!changes.isEmpty()) {
+                ChangeBatch published = new ChangeBatch(System.currentTimeMillis(), List.copyOf(changes));
+                changes.clear();
+                for (Consumer<ChangeBatch> listener : changeListeners) {
+                    tellListener(listener, published);
+                }
+            }
+
+            // Complete the callers now their changes are visible to readers.
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).getResult().complete(responses.get(i));
+            }
+        } catch (RuntimeException | Error e) {
+            // Nothing from this batch was published, fail its callers and keep the writer thread running.
+            LOG.error("Error applying a batch of " + batch.size() + " changes: " + e);
+            changes.clear();
+            for (Mutation failed : batch) {
+                failed.getResult().completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Moves rarely used countries to disk, keeping them on the heap if the disk can't be written.
+     * @param builder the next snapshot.
+     */
+    private void evict(CitySnapshot.Builder builder) {
+        try {
+            tiers.evict(builder);
+        } catch (UncheckedIOException e) {
+            // Each country is only replaced once it has been written, so the snapshot is still complete.
+            LOG.error("Error evicting countries to disk, keeping them on the heap: " + e);
+        }
+    }
+
+    /**
+     * Tells a listener about a published batch of changes.
+     * @param listener the listener.
+     * @param published the changes.
+     */
+    private static void tellListener(Consumer<ChangeBatch> listener, ChangeBatch published) {
+        try {
+            listener.accept(published);
+        } catch (RuntimeException e) {
+            // The batch is already visible to readers, one broken listener mustn't fail its callers.
+            LOG.error("Error telling a listener about " + published.getChanges().size() + " changes: " + e);
+        }
+    }
+
+    /**
+     * Applies a single mutation to the snapshot being built.
+     * @param builder the next snapshot.
+     * @param mutation the mutation to apply.
+     * @return the response to send to the caller.
+     */
+    private ResponseEntity<?> apply(CitySnapshot.Builder builder, Mutation mutation) {
+        try {
+            if (mutation.getKind() == Mutation.Kind.PROMOTE) {
+                // A reader wants a cold country back on the heap.
+                tiers.promote(builder, mutation.getCity().getCountry());
+                return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+            }
+
+            if (mutation.getKind() == Mutation.Kind.INSTALL) {
+                // Start again from the leader's data.
+                builder.replaceAll(mutation.getSnapshot());
+                return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+            }
+
+            if (mutation.getKind() == Mutation.Kind.REPLICATE) {
+                return replay(builder, mutation.getBatch());
+            }
+
+            if (mutation.getKind() == Mutation.Kind.STORE_ALL) {
+                return storeAll(builder, mutation.getCities());
+            }
+
+            // Read a cold country from disk once, not on every lookup.
+            warm(builder, mutation.getCity().getCountry());
+            touch(builder, mutation.getCity().getCountry());
+
+            if (mutation.getKind() == Mutation.Kind.STORE) {
+                // Check the city doesn't already exist.
+                if (builder.contains(mutation.getCity())) {
+                    // The city already exists, return 409 error.
+                    return ResponseEntity.status(HttpStatus.CONFLICT).body(null);
                 }
+                builder.add(mutation.getCity());
+                changes.add(new Change(false, mutation.getCity(), builder.version()));
+                // The country may be new.
+                touch(builder, mutation.getCity().getCountry());
+                // Inform the user the operation was successful.
+                return ResponseEntity.status(HttpStatus.NO_CONTENT)
+                        .header(SEQUENCE_HEADER, Long.toString(builder.version()))
+                        .body(null);
+            }
+
+            // Remove the city if it exists.
+            if (builder.remove(mutation.getCity())) {
+                changes.add(new Change(true, mutation.getCity(), builder.version()));
+                return ResponseEntity.status(HttpStatus.NO_CONTENT)
+                        .header(SEQUENCE_HEADER, Long.toString(builder.version()))
+                        .build();
+            }
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        } catch (RuntimeException e) {
+            // Don't let one bad mutation kill the writer thread.
+            LOG.error("Error applying " + mutation.getKind() + " change: " + e);
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Adds every city that doesn't already exist. Every country is brought back onto the heap
+     * before any city is added, so if one can't be read from disk none of the cities are stored.
+     * @param builder the next snapshot.
+     * @param cities the cities to store.
+     * @return response code 200 with the number of cities stored.
+     */
+    private ResponseEntity<?> storeAll(CitySnapshot.Builder builder, List<City> cities) {
+        // The names in each state changed by this batch, so checking a city doesn't scan its whole state.
+        HashMap<List<String>, HashSet<String>> names = new HashMap<>();
+        for (City city : cities) {
+            List<String> state = List.of(city.getCountry(), city.getState());
+            if (!names.containsKey(state)) {
+                warm(builder, city.getCountry());
+                names.put(state, namesIn(builder, city.getCountry(), city.getState()));
+            }
+        }
+
+        int stored = 0;
+        for (City city : cities) {
+            if (names.get(List.of(city.getCountry(), city.getState())).add(city.getName())) {
+                builder.add(city);
+                changes.add(new Change(false, city, builder.version()));
+                stored++;
+            }
+        }
+        return new ResponseEntity<>(stored, HttpStatus.OK);
+    }
+
+    /**
+     * Collects the names of the cities in a state.
+     * @param builder the next snapshot.
+     * @param country the country the state is in.
+     * @param state the state.
+     * @return the names, empty if the state doesn't exist.
+     */
+    private static HashSet<String> namesIn(CitySnapshot.Builder builder, String country, String state) {
+        HashSet<String> names = new HashSet<>();
+        Map<String, List<BasicCity>> states = builder.countries().get(country);
+        if (states != null && states.containsKey(state)) {
+            for (BasicCity city : states.get(state)) {
+                names.add(city.getName());
             }
+        }
+        return names;
+    }
 
-            // Release the lock.
-            deleting = false;
-            notifyAll();
+    /**
+     * Moves a cold country back onto the heap before it is changed, so it is only read from disk once.
+     * @param builder the next snapshot.
+     * @param country the country about to be changed.
+     */
+    private void warm(CitySnapshot.Builder builder, String country) {
+        if (tiers != null) {
+            tiers.promote(builder, country);
+        }
+    }
+
+    /**
+     * Marks a country as recently used, if it exists.
+     * @param builder the next snapshot.
+     * @param country the country.
+     */
+    private void touch(CitySnapshot.Builder builder, String country) {
+        if (tiers != null && builder.countries().containsKey(country)) {
+            tiers.touch(country);
+        }
+    }
 
-            // The data was deleted successfully, return success response.
-            responseEntity = new ResponseEntity<>(HttpStatus.NO_CONTENT);
+    /**
+     * Applies the leader's changes, skipping any this data already includes.
+     * @param builder the next snapshot.
+     * @param batch the leader's changes.
+     * @return response code 204 if the changes were applied.
+     * @throws IllegalStateException if the changes don't follow on from this data, nothing is applied.
+     */
+    private ResponseEntity<?> replay(CitySnapshot.Builder builder, ChangeBatch batch) {
+        // Check the whole batch first so a bad change doesn't leave the ones before it applied.
+        checkFollowsOn(builder, batch);
+        for (Change change : batch.getChanges()) {
+            if (change.getSequence() <= builder.version()) {
+                // Already included in the snapshot we started from.
+                continue;
+            }
+            if (change.isRemoved()) {
+                builder.remove(change.getCity());
+            } else {
+                builder.add(change.getCity());
+            }
+            changes.add(change);
         }
+        return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+    }
 
-        return CompletableFuture.completedFuture(responseEntity);
+    /**
+     * Checks the leader's changes can all be applied, without applying any of them.
+     * @param builder the next snapshot.
+     * @param batch the leader's changes.
+     * @throws IllegalStateException if the changes don't follow on from this data.
+     */
+    private void checkFollowsOn(CitySnapshot.Builder builder, ChangeBatch batch) {
+        long version = builder.version();
+        // Whether each city changed earlier in the batch exists after that change.
+        HashMap<List<String>, Boolean> changed = new HashMap<>();
+        for (Change change : batch.getChanges()) {
+            if (change.getSequence() <= version) {
+                continue;
+            }
+            if (change.getSequence() != version + 1) {
+                throw new IllegalStateException("Expected change " + (version + 1)
+                        + " but received " + change.getSequence());
+            }
+            City city = change.getCity();
+            warm(builder, city.getCountry());
+            List<String> key = List.of(city.getCountry(), city.getState(), city.getName());
+            Boolean exists = changed.get(key);
+            if (exists == null) {
+                exists = builder.contains(city);
+            }
+            if (change.isRemoved() && !exists) {
+                throw new IllegalStateException("Change " + change.getSequence() + " removes a missing city");
+            }
+            if (!change.isRemoved() && exists) {
+                throw new IllegalStateException("Change " + change.getSequence() + " adds an existing city");
+            }
+            changed.put(key, !change.isRemoved());
+            version++;
+        }
     }
 
     /**
@@ -156,18 +729,92 @@ public class DataService {
      * @param date (optional) date to filter.
      * @return response code 200 if success with JSON city data or 404 if no cities exist.
      */
-    @Async
-    public synchronized CompletableFuture<ResponseEntity<?>> getCities(String country, String state, String date) {
+    public CompletableFuture<ResponseEntity<?>> getCities(String country, String state, String date) {
+        return getCities(country, state, date, WireFormat.JSON);
+    }
+
+    /**
+     * Get the cities in the requested wire format.
+     * @param country (optional) country to filter.
+     * @param state (optional) state to filter.
+     * @param date (optional) date to filter.
+     * @param format the format to encode the cities in.
+     * @return response code 200 if success with encoded city data or 404 if no cities exist.
+     */
+    public CompletableFuture<ResponseEntity<?>> getCities(String country, String state, String date,
+                                                         WireFormat format) {
+        // Take the latest snapshot, it won't change while we read it.
+        CitySnapshot view = snapshot;
+
+        // Identical reads of the same snapshot share one result.
+        List<Object> key = Arrays.asList(country, state, date, format, view.getVersion());
+        return CompletableFuture.completedFuture(
+                reads.execute(key, () -> readCities(view, country, state, date, format)));
+    }
+
+    /**
+     * Gets the states of a country for a read, fetching it from disk if it has been evicted.
+     * @param data the countries in the snapshot being read.
+     * @param country the country to find.
+     * @return the states in the country or null if it doesn't exist.
+     */
+    private Map<String, List<BasicCity>> countryForRead(Map<String, Map<String, List<BasicCity>>> data,
+                                                        String country) {
+        Map<String, List<BasicCity>> states = data.get(country);
+        if (tiers == null || states == null) {
+            return states;
+        }
+
+        tiers.touch(country);
+        if (states instanceof ColdCountry) {
+            // Bring it back onto the heap, it's fine to skip this if the queue is full or a change is being applied.
+            Mutation promote = new Mutation(Mutation.Kind.PROMOTE, new City(null, null, country, null));
+            if (writer == null) {
+                if (writeLock.tryLock()) {
+                    try {
+                        applyLocked(promote);
+                    } finally {
+                        writeLock.unlock();
+                    }
+                }
+            } else if (mutations.offer(promote)) {
+                LockSupport.unpark(writer);
+            }
+            // Read it from disk once for this request.
+            return ((ColdCountry) states).load();
+        }
+        return states;
+    }
+
+    /**
+     * Sorts and encodes the cities in a snapshot.
+     * @param view the snapshot to read.
+     * @param country (optional) country to filter.
+     * @param state (optional) state to filter.
+     * @param date (optional) date to filter.
+     * @param format the format to encode the cities in.
+     * @return response code 200 if success with encoded city data or 404 if no cities exist.
+     */
+    private ResponseEntity<?> readCities(CitySnapshot view, String country, String state, String date,
+                                         WireFormat format) {
         ResponseEntity<?> responseEntity =
                 new ResponseEntity<>(HttpStatus.NOT_FOUND);
 
+        // Only read the clock when a recording wants this event.
+        CityQueryEvent event = new CityQueryEvent();
+        boolean profiling = event.isEnabled();
+        event.begin();
+        long sortStart = profiling ? System.nanoTime() : 0;
+
+        Map<String, Map<String, List<BasicCity>>> data = view.getCountries();
+
         PriorityQueue<City> cityData = new PriorityQueue<>(new CityComparator());
 
         if (country == null && state == null) {
             // Get the dataset attached to each country.
-            for (Map.Entry<String, HashMap<String, ArrayList<BasicCity>>> countr : data.entrySet()) {
+            for (Map.Entry<String, Map<String, List<BasicCity>>> countr : data.entrySet()) {
                 // Get the dataset attached to each state.
-                for (Map.Entry<String, ArrayList<BasicCity>> st : countr.getValue().entrySet()) {
+                for (Map.Entry<String, List<BasicCity>> st : countr.getValue().entrySet()) {
                     // Go through every stored city and add it to the cityData queue, sorted by date.
                     for (BasicCity city : st.getValue()) {
                         cityData.add(new City(city.getName(), st.getKey(), countr.getKey(), city.getFoundingDate()));
@@ -176,9 +823,10 @@ public class DataService {
             }
         } else {
             // Get all cities by country (and state).
-            if (state == null && data.containsKey(country)) {
+            Map<String, List<BasicCity>> states = countryForRead(data, country);
+            if (state == null && states != null) {
                 // No user defined state so get all the states in this country.
-                for (Map.Entry<String, ArrayList<BasicCity>> stateData : data.get(country).entrySet()) {
+                for (Map.Entry<String, List<BasicCity>> stateData : states.entrySet()) {
                     // Add all the cities in every state.
                     for (BasicCity city : stateData.getValue()) {
                         cityData.add(new City(city.getName(), stateData.getKey(), country, city.getFoundingDate()));
@@ -186,11 +834,11 @@ public class DataService {
                 }
             } else {
                 // We need to also filter by state, get by country and state.
-                if (data.containsKey(country)) {
+                if (states != null) {
                     // Check the state exists in this country.
-                    if (data.get(country).containsKey(state)) {
+                    if (states.containsKey(state)) {
                         // The state exists, traverse through them.
-                        for (BasicCity city : data.get(country).get(state)) {
+                        for (BasicCity city : states.get(state)) {
                             // Add all cities in the defined state.
                             cityData.add(new City(city.getName(), state, country, city.getFoundingDate()));
                         }
@@ -199,8 +847,8 @@ public class DataService {
             }
         }
 
-        Gson gson = new Gson();
-        String sortedData;
+        int scopeSize = cityData.size();
+        ArrayList<?> sortedCities;
 
         // Decide if we will produce complex City objects or simplified BasicCity objects.
         if (country == null && state == null) {
@@ -230,8 +878,7 @@ public class DataService {
                     cities.add(city);
             }
         }
-            // Convert the data to JSON format.
-            sortedData = gson.toJson(new CityWrapper(cities));
+            sortedCities = cities;
     } else {
             // We need to simplify our data.
             ArrayList<BasicCity> cities = new ArrayList<>();
@@ -243,49 +890,56 @@ public class DataService {
                 // Add the city.
                 cities.add(simplifiedCity);
             }
-            // Convert the data to JSON format.
-            sortedData = gson.toJson(new CityWrapper(cities));
+            sortedCities = cities;
         }
 
+        long sortEnd = profiling ? System.nanoTime() : 0;
+
         // See if we have any data.
-        if (!sortedData.equals("{\"cities\":[]}")) {
-            // We have data, send it.
-            responseEntity = new ResponseEntity<>(sortedData, HttpStatus.OK);
+        if (!sortedCities.isEmpty()) {
+            // We have data, convert it to the requested format and send it.
+            Object body = format.encode(new CityWrapper(sortedCities));
+            responseEntity = ResponseEntity.ok()
+                    .contentType(format.getMediaType())
+                    // The body depends on the Accept header, caches must keep each format apart.
+                    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT)
+                    .header(SEQUENCE_HEADER, Long.toString(view.getVersion()))
+                    .body(body);
+
+            if (profiling) {
+                event.serializationTime = System.nanoTime() - sortEnd;
+                event.serializedBytes = body instanceof byte[] ? ((byte[]) body).length : utf8Length((String) body);
+            }
+        }
+
+        if (profiling) {
+            event.country = country;
+            event.state = state;
+            event.format = format.name();
+            event.scopeSize = scopeSize;
+            event.sortTime = sortEnd - sortStart;
+            event.commit();
         }
 
-        return CompletableFuture.completedFuture(responseEntity);
+        return responseEntity;
     }
 
     /**
-     * Checks if this city already exists on the server.
-     * @param city the city we want to find.
-     * @return true if the city exists.
+     * Counts the bytes a string takes on the wire as UTF-8, without encoding it.
+     * @param text the string.
+     * @return the encoded size in bytes.
      */
-    private synchronized boolean hasCity(City city) {
-        // Wait while other threads are modifying the data.
-        while (writing || deleting) {
-            try {
-                wait();
-            } catch (InterruptedException e) {
-                LOG.error("The program was interrupted: " + e);
-            }
-        }
-
-        // Find the country.
-        if (data.containsKey(city.getCountry())) {
-            // The country exists, check if the state exists.
-            if (data.get(city.getCountry()).containsKey(city.getState())) {
-                // The state exists, check that the city exist.
-                ArrayList<BasicCity> citiesInState = data.get(city.getCountry()).get(city.getState());
-                for (BasicCity storedCity : citiesInState) {
-                    if (storedCity.getName().equals(city.getName())) {
-                        // The city was found.
-                        return true;
-                    }
-                }
+    private static long utf8Length(String text) {
+        long bytes = text.length();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= 0x800) {
+                // Three bytes, or four for a surrogate pair which is already counted as two chars.
+                bytes += Character.isSurrogate(c) ? 1 : 2;
+            } else if (c >= 0x80) {
+                bytes++;
             }
         }
-
-        return false;
+        return bytes;
     }
 }
@@ -0,0 +1,172 @@
+package com.example.cscserver.Data;
+
+import com.example.cscserver.Model.City;
+import org.springframework.http.ResponseEntity;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A pending change to the server data, queued for the writer thread.
+ * @author Karl Clifford
+ * @version 1.0.0
+ */
+final class Mutation {
+
+    /**
+     * The kinds of change the writer thread can apply.
+     */
+    enum Kind {
+        /**
+         * Add a city.
+         */
+        STORE,
+        /**
+         * Remove a city.
+         */
+        REMOVE,
+        /**
+         * Add many cities at once, skipping any that already exist.
+         */
+        STORE_ALL,
+        /**
+         * Move a country evicted to disk back onto the heap.
+         */
+        PROMOTE,
+        /**
+         * Replace all the data with a snapshot sent by the leader.
+         */
+        INSTALL,
+        /**
+         * Apply a batch of changes sent by the leader.
+         */
+        REPLICATE
+    }
+
+    /**
+     * The kind of change.
+     */
+    private final Kind kind;
+
+    /**
+     * The city to store or remove.
+     */
+    private final City city;
+
+    /**
+     * The cities to store in a bulk load.
+     */
+    private final List<City> cities;
+
+    /**
+     * The leader's snapshot to install.
+     */
+    private final CitySnapshot snapshot;
+
+    /**
+     * The leader's changes to apply.
+     */
+    private final ChangeBatch batch;
+
+    /**
+     * Completed by the writer thread once the change has been applied.
+     */
+    private final CompletableFuture<ResponseEntity<?>> result = new CompletableFuture<>();
+
+    /**
+     * The constructor of this class.
+     * @param kind the kind of change.
+     * @param city the city to store or remove, only the country is used when promoting.
+     */
+    Mutation(Kind kind, City city) {
+        this.kind = kind;
+        this.city = city;
+        this.cities = null;
+        this.snapshot = null;
+        this.batch = null;
+    }
+
+    /**
+     * The constructor used for bulk loads.
+     * @param cities the cities to store.
+     */
+    Mutation(List<City> cities) {
+        this.kind = Kind.STORE_ALL;
+        this.city = null;
+        this.cities = cities;
+        this.snapshot = null;
+        this.batch = null;
+    }
+
+    /**
+     * The constructor used when installing the leader's snapshot.
+     * @param snapshot the leader's snapshot.
+     */
+    Mutation(CitySnapshot snapshot) {
+        this.kind = Kind.INSTALL;
+        this.city = null;
+        this.cities = null;
+        this.snapshot = snapshot;
+        this.batch = null;
+    }
+
+    /**
+     * The constructor used when applying the leader's changes.
+     * @param batch the leader's changes.
+     */
+    Mutation(ChangeBatch batch) {
+        this.kind = Kind.REPLICATE;
+        this.city = null;
+        this.cities = null;
+        this.snapshot = null;
+        this.batch = batch;
+    }
+
+    /**
+     * Gets the kind of change.
+     * @return the kind of change.
+     */
+    Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Gets the city to store or remove.
+     * @return the city.
+     */
+    City getCity() {
+        return city;
+    }
+
+    /**
+     * Gets the cities to store in a bulk load.
+     * @return the cities.
+     */
+    List<City> getCities() {
+        return cities;
+    }
+
+    /**
+     * Gets the leader's snapshot to install.
+     * @return the snapshot.
+     */
+    CitySnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Gets the leader's changes to apply.
+     * @return the changes.
+     */
+    ChangeBatch getBatch() {
+        return batch;
+    }
+
+    /**
+     * Gets the future completed once this change has been applied.
+     * @return the response to send to the caller.
+     */
+    CompletableFuture<ResponseEntity<?>> getResult() {
+        return result;
+    }
+}
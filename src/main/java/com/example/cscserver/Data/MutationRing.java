@@ -0,0 +1,102 @@
+package com.example.cscserver.Data;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded lock-free ring buffer that many request threads write to and a
+ * single writer thread reads from.
+ * @author Karl Clifford
+ * @version 1.0.0
+ */
+final class MutationRing {
+
+    /**
+     * The queued mutations.
+     */
+    private final Mutation[] slots;
+
+    /**
+     * The sequence number of each slot, tells producers and the consumer whose turn it is.
+     */
+    private final AtomicLongArray sequences;
+
+    /**
+     * Used to wrap positions onto slots, the capacity is always a power of two.
+     */
+    private final int mask;
+
+    /**
+     * The next position producers will claim.
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * The next position the consumer will read, only touched by the writer thread.
+     */
+    private long head = 0;
+
+    /**
+     * The constructor of this class.
+     * @param capacity the minimum number of mutations the ring can hold, rounded up to a power of two.
+     */
+    MutationRing(int capacity) {
+        int size = 2;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        slots = new Mutation[size];
+        sequences = new AtomicLongArray(size);
+        mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Adds a mutation to the ring, safe to call from any thread.
+     * @param mutation the mutation to add.
+     * @return false if the ring is full.
+     */
+    boolean offer(Mutation mutation) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                // The slot is free, try to claim it.
+                if (tail.compareAndSet(position, position + 1)) {
+                    slots[index] = mutation;
+                    // Publish the mutation to the consumer.
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                // The consumer hasn't freed this slot yet, the ring is full.
+                return false;
+            } else {
+                // Another producer claimed this slot, move on.
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Removes the oldest mutation from the ring, must only be called by the writer thread.
+     * @return the oldest mutation or null if the ring is empty.
+     */
+    Mutation poll() {
+        int index = (int) (head & mask);
+        if (sequences.get(index) != head + 1) {
+            // Nothing has been published to this slot yet.
+            return null;
+        }
+        Mutation mutation = slots[index];
+        slots[index] = null;
+        // Hand the slot back to the producers.
+        sequences.set(index, head + slots.length);
+        head++;
+        return mutation;
+    }
+}
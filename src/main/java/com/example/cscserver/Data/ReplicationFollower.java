@@ -0,0 +1,254 @@
+package com.example.cscserver.Data;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Makes this server a read replica of a leader. Client changes are rejected and
+ * the leader's changes are applied by the writer thread in the order the leader
+ * made them. If the connection drops or the changes can't be applied, the
+ * follower reconnects and starts again from a new snapshot. Only follows when
+ * csc.replication.role is follower, the role is checked at run time so it works
+ * with lazy initialisation and ahead-of-time processed builds.
+ * @author Karl Clifford
+ * @version 1.0.0
+ */
+@Component
+@Lazy(false)
+public class ReplicationFollower {
+
+    /**
+     * Handles server logs.
+     */
+    private static final Logger LOG =
+            LoggerFactory.getLogger(ReplicationFollower.class);
+
+    /**
+     * How long to wait before reconnecting to the leader.
+     */
+    private static final long RECONNECT_DELAY_MILLIS = 1000;
+
+    /**
+     * The server's data.
+     */
+    private final DataService data;
+
+    /**
+     * The leader's replication address.
+     */
+    private final InetSocketAddress leader;
+
+    /**
+     * How often the leader sends a heartbeat when idle.
+     */
+    private final long heartbeatMillis;
+
+    /**
+     * Reads the leader's changes, null if this server isn't a follower.
+     */
+    private final Thread receiver;
+
+    /**
+     * The current connection to the leader, null when disconnected.
+     */
+    private volatile Socket socket;
+
+    /**
+     * Whether to keep following the leader.
+     */
+    private volatile boolean running = true;
+
+    /**
+     * The latest version the leader has told us about.
+     */
+    private volatile long leaderVersion = 0;
+
+    /**
+     * How long ago the leader published the last batch we applied, 0 once caught up.
+     */
+    private final AtomicLong lagMillis = new AtomicLong();
+
+    /**
+     * 1 while connected to the leader, otherwise 0.
+     */
+    private final AtomicInteger connected = new AtomicInteger();
+
+    /**
+     * The constructor of this class, stops accepting client changes and starts following the leader
+     * if this server is a follower.
+     * @param data the server's data.
+     * @param role this server's replication role, nothing is started unless it is follower.
+     * @param leaderHost the leader's host name.
+     * @param leaderPort the leader's replication port.
+     * @param heartbeatMillis how often the leader sends a heartbeat when idle.
+     */
+    public ReplicationFollower(DataService data,
+                               @Value("${csc.replication.role:}") String role,
+                               @Value("${csc.replication.leader-host:localhost}") String leaderHost,
+                               @Value("${csc.replication.port:7070}") int leaderPort,
+                               @Value("${csc.replication.heartbeat-millis:1000}") long heartbeatMillis) {
+        this.data = data;
+        this.leader = new InetSocketAddress(leaderHost, leaderPort);
+        this.heartbeatMillis = heartbeatMillis;
+        if (!"follower".equalsIgnoreCase(role.trim())) {
+            receiver = null;
+            return;
+        }
+
+        data.becomeReplica();
+        Metrics.gauge("csc.replication.lag.entries", Tags.empty(), this, ReplicationFollower::getLagEntries);
+        Metrics.gauge("csc.replication.lag.millis", lagMillis);
+        Metrics.gauge("csc.replication.connected", connected);
+
+        receiver = new Thread(this::follow, "csc-replication-follower");
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    /**
+     * Gets how many changes the leader has made that haven't been applied here yet.
+     * @return the number of changes behind the leader.
+     */
+    public long getLagEntries() {
+        return Math.max(0, leaderVersion - data.snapshot().getVersion());
+    }
+
+    /**
+     * Stops following the leader.
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (receiver == null) {
+            return;
+        }
+        running = false;
+        closeSocket();
+        receiver.interrupt();
+    }
+
+    /**
+     * Follows the leader until the server is shut down, reconnecting whenever the connection drops.
+     */
+    private void follow() {
+        while (running) {
+            try (Socket connection = new Socket()) {
+                socket = connection;
+                connection.connect(leader, (int) heartbeatMillis * 3);
+                // Give up on the leader if it misses a few heartbeats.
+                connection.setSoTimeout((int) heartbeatMillis * 3);
+                receive(connection, new DataInputStream(new BufferedInputStream(connection.getInputStream(), 65536)));
+            } catch (IOException e) {
+                if (running) {
+                    LOG.warn("Lost connection to the leader at " + leader + ": " + e);
+                }
+            } catch (RuntimeException e) {
+                // Bad data from the leader, start again from a new snapshot rather than stop following.
+                LOG.error("Error following the leader at " + leader + ", reconnecting for a new snapshot: " + e);
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                socket = null;
+                connected.set(0);
+            }
+
+            try {
+                Thread.sleep(RECONNECT_DELAY_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Installs the leader's snapshot, then applies each batch of changes as it arrives.
+     * @param connection the connection to the leader.
+     * @param in the stream from the leader.
+     * @throws IOException if the connection drops.
+     * @throws InterruptedException if the follower is shut down.
+     */
+    private void receive(Socket connection, DataInputStream in) throws IOException, InterruptedException {
+        if (in.readByte() != ReplicationProtocol.SNAPSHOT) {
+            throw new IOException("Expected a snapshot from the leader");
+        }
+        CitySnapshot start = ReplicationProtocol.readSnapshot(in);
+        leaderVersion = start.getVersion();
+        data.install(start).whenComplete((response, error) -> checkApplied(response, error, connection));
+        connected.set(1);
+        LOG.info("Following the leader at " + leader + " from version " + start.getVersion());
+
+        while (running) {
+            byte type = in.readByte();
+            if (type == ReplicationProtocol.BATCH) {
+                ChangeBatch batch = ReplicationProtocol.readBatch(in);
+                leaderVersion = Math.max(leaderVersion, batch.getLastSequence());
+                // Don't wait for the writer, the next batch can be read while this one is applied.
+                data.replicate(batch).whenComplete((response, error) -> {
+                    if (checkApplied(response, error, connection)) {
+                        lagMillis.set(data.snapshot().getVersion() >= leaderVersion
+                                ? 0 : Math.max(0, System.currentTimeMillis() - batch.getPublishedAt()));
+                    }
+                });
+            } else if (type == ReplicationProtocol.HEARTBEAT) {
+                leaderVersion = Math.max(leaderVersion, in.readLong());
+                if (data.snapshot().getVersion() >= leaderVersion) {
+                    lagMillis.set(0);
+                }
+            } else {
+                throw new IOException("Unknown message " + type + " from the leader");
+            }
+        }
+    }
+
+    /**
+     * Starts again from a new snapshot if the leader's changes couldn't be applied.
+     * @param response the writer thread's response, null if it failed.
+     * @param error why the writer thread failed, null if it responded.
+     * @param connection the connection the changes arrived on.
+     * @return true if the changes were applied.
+     */
+    private boolean checkApplied(ResponseEntity<?> response, Throwable error, Socket connection) {
+        if (error == null && response.getStatusCode() == HttpStatus.NO_CONTENT) {
+            return true;
+        }
+        if (!connection.isClosed()) {
+            LOG.error("The leader's changes couldn't be applied, reconnecting for a new snapshot"
+                    + (error == null ? "" : ": " + error));
+            try {
+                connection.close();
+            } catch (IOException e) {
+                LOG.error("Error closing the connection to the leader: " + e);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Closes the connection to the leader, if there is one.
+     */
+    private void closeSocket() {
+        Socket current = socket;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                LOG.error("Error closing the connection to the leader: " + e);
+            }
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package com.example.cscserver.Data;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Ships every change made on this server to its read replicas. Each follower that
+ * connects is sent a full snapshot followed by every batch of changes published
+ * after it, in order. A follower that falls too far behind is disconnected and
+ * starts again from a new snapshot when it reconnects. Only listens when
+ * csc.replication.role is leader, the role is checked at run time so it works
+ * with lazy initialisation and ahead-of-time processed builds.
+ * @author Karl Clifford
+ * @version 1.0.0
+ */
+@Component
+@Lazy(false)
+public class ReplicationLeader {
+
+    /**
+     * Handles server logs.
+     */
+    private static final Logger LOG =
+            LoggerFactory.getLogger(ReplicationLeader.class);
+
+    /**
+     * The server's data.
+     */
+    private final DataService data;
+
+    /**
+     * Accepts connections from followers, null if this server isn't the leader.
+     */
+    private final ServerSocket server;
+
+    /**
+     * How long a follower goes without a message before it is sent a heartbeat.
+     */
+    private final long heartbeatMillis;
+
+    /**
+     * The most batches of changes waiting to be sent to a follower before it is disconnected.
+     */
+    private final int maxPendingBatches;
+
+    /**
+     * The followers currently connected.
+     */
+    private final CopyOnWriteArrayList<Follower> followers = new CopyOnWriteArrayList<>();
+
+    /**
+     * The number of followers currently connected.
+     */
+    private final AtomicInteger connected = new AtomicInteger();
+
+    /**
+     * Counts followers disconnected because they fell too far behind.
+     */
+    private final Counter dropped = Metrics.counter("csc.replication.dropped");
+
+    /**
+     * The constructor of this class, starts listening for followers if this server is the leader.
+     * @param data the server's data.
+     * @param role this server's replication role, nothing is started unless it is leader.
+     * @param bindAddress the address to listen on.
+     * @param port the port to listen on.
+     * @param heartbeatMillis how long a follower goes without a message before it is sent a heartbeat.
+     * @param maxPendingBatches the most batches waiting to be sent to a follower before it is disconnected.
+     * @throws IOException if the port can't be opened.
+     */
+    public ReplicationLeader(DataService data,
+                             @Value("${csc.replication.role:}") String role,
+                             @Value("${csc.replication.bind-address:127.0.0.1}") String bindAddress,
+                             @Value("${csc.replication.port:7070}") int port,
+                             @Value("${csc.replication.heartbeat-millis:1000}") long heartbeatMillis,
+                             @Value("${csc.replication.max-pending-batches:4096}") int maxPendingBatches)
+            throws IOException {
+        this.data = data;
+        this.heartbeatMillis = heartbeatMillis;
+        this.maxPendingBatches = maxPendingBatches;
+        if (!"leader".equalsIgnoreCase(role.trim())) {
+            this.server = null;
+            return;
+        }
+
+        Metrics.gauge("csc.replication.followers", connected);
+        this.server = new ServerSocket(port, 50, InetAddress.getByName(bindAddress));
+
+        Thread acceptor = new Thread(this::acceptFollowers, "csc-replication-leader");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        LOG.info("Replication leader listening on " + bindAddress + ":" + port);
+    }
+
+    /**
+     * Stops listening and disconnects every follower.
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (server == null) {
+            return;
+        }
+        try {
+            server.close();
+        } catch (IOException e) {
+            LOG.error("Error closing the replication port: " + e);
+        }
+        for (Follower follower : followers) {
+            follower.close();
+        }
+    }
+
+    /**
+     * Accepts followers until the server is shut down, each is served by its own thread.
+     */
+    private void acceptFollowers() {
+        while (!server.isClosed()) {
+            try {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                Follower follower = new Follower(socket);
+                Thread sender = new Thread(follower, "csc-replication-" + socket.getRemoteSocketAddress());
+                sender.setDaemon(true);
+                sender.start();
+            } catch (IOException e) {
+                if (!server.isClosed()) {
+                    LOG.error("Error accepting a follower: " + e);
+                }
+            }
+        }
+    }
+
+    /**
+     * A connected follower, queues the changes published by the writer thread and sends them in order.
+     */
+    private final class Follower implements Runnable, Consumer<ChangeBatch> {
+
+        /**
+         * The connection to the follower.
+         */
+        private final Socket socket;
+
+        /**
+         * Batches waiting to be sent.
+         */
+        private final ArrayBlockingQueue<ChangeBatch> pending = new ArrayBlockingQueue<>(maxPendingBatches);
+
+        /**
+         * Set by the writer thread if a batch didn't fit in the queue.
+         */
+        private volatile boolean overflowed = false;
+
+        /**
+         * The constructor of this class.
+         * @param socket the connection to the follower.
+         */
+        private Follower(Socket socket) {
+            this.socket = socket;
+        }
+
+        /**
+         * Queues a published batch, called on the writer thread so it never blocks.
+         * @param batch the batch.
+         */
+        @Override
+        public void accept(ChangeBatch batch) {
+            if (!pending.offer(batch)) {
+                overflowed = true;
+            }
+        }
+
+        /**
+         * Sends the snapshot and then every batch until the follower disconnects.
+         */
+        @Override
+        public void run() {
+            followers.add(this);
+            connected.incrementAndGet();
+            try {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 65536));
+
+                // Listen before taking the snapshot, so no batch published afterwards is missed.
+                data.addChangeListener(this);
+                CitySnapshot start = data.snapshot();
+                ReplicationProtocol.writeSnapshot(out, start);
+                out.flush();
+                long sent = start.getVersion();
+                LOG.info("Follower " + socket.getRemoteSocketAddress() + " starting from version " + sent);
+
+                while (!socket.isClosed()) {
+                    if (overflowed) {
+                        dropped.increment();
+                        LOG.warn("Follower " + socket.getRemoteSocketAddress() + " fell too far behind, disconnecting");
+                        break;
+                    }
+
+                    ChangeBatch batch = pending.poll(heartbeatMillis, TimeUnit.MILLISECONDS);
+                    if (batch == null) {
+                        // Nothing has changed, let the follower know we're still here.
+                        ReplicationProtocol.writeHeartbeat(out, data.snapshot().getVersion());
+                        out.flush();
+                        continue;
+                    }
+                    if (batch.getLastSequence() <= sent) {
+                        // Already included in the snapshot.
+                        continue;
+                    }
+                    ReplicationProtocol.writeBatch(out, batch);
+                    sent = batch.getLastSequence();
+                    // Write queued batches together.
+                    if (pending.isEmpty()) {
+                        out.flush();
+                    }
+                }
+            } catch (IOException e) {
+                LOG.info("Follower " + socket.getRemoteSocketAddress() + " disconnected: " + e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                data.removeChangeListener(this);
+                followers.remove(this);
+                connected.decrementAndGet();
+                close();
+            }
+        }
+
+        /**
+         * Closes the connection to the follower.
+         */
+        private void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                LOG.error("Error closing follower connection: " + e);
+            }
+        }
+    }
+}
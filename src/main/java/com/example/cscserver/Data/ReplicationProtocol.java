@@ -0,0 +1,153 @@
+package com.example.cscserver.Data;
+
+import com.example.cscserver.Model.BasicCity;
+import com.example.cscserver.Model.City;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads and writes the messages sent from the leader to its followers. A follower
+ * first receives a full snapshot, then a batch of changes for every snapshot the
+ * leader publishes and a heartbeat whenever the leader is idle.
+ * @author Karl Clifford
+ * @version 1.0.0
+ */
+final class ReplicationProtocol {
+
+    /**
+     * Marks a full snapshot.
+     */
+    static final byte SNAPSHOT = 'S';
+
+    /**
+     * Marks a batch of changes.
+     */
+    static final byte BATCH = 'B';
+
+    /**
+     * Marks a heartbeat carrying the leader's latest version.
+     */
+    static final byte HEARTBEAT = 'H';
+
+    /**
+     * Only has static methods.
+     */
+    private ReplicationProtocol() {
+    }
+
+    /**
+     * Writes every city in a snapshot.
+     * @param out the stream to the follower.
+     * @param snapshot the snapshot.
+     * @throws IOException if the follower can't be reached.
+     */
+    static void writeSnapshot(DataOutputStream out, CitySnapshot snapshot) throws IOException {
+        Map<String, Map<String, List<BasicCity>>> countries = snapshot.getCountries();
+        out.writeByte(SNAPSHOT);
+        out.writeLong(snapshot.getVersion());
+        out.writeInt(countries.size());
+        for (Map.Entry<String, Map<String, List<BasicCity>>> country : countries.entrySet()) {
+            BinaryStrings.write(out, country.getKey());
+            out.writeInt(country.getValue().size());
+            for (Map.Entry<String, List<BasicCity>> state : country.getValue().entrySet()) {
+                BinaryStrings.write(out, state.getKey());
+                out.writeInt(state.getValue().size());
+                for (BasicCity city : state.getValue()) {
+                    BinaryStrings.write(out, city.getName());
+                    BinaryStrings.write(out, city.getFoundingDate());
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads a snapshot, the marker byte must already have been read.
+     * @param in the stream from the leader.
+     * @return the leader's snapshot.
+     * @throws IOException if the leader can't be reached.
+     */
+    static CitySnapshot readSnapshot(DataInputStream in) throws IOException {
+        long version = in.readLong();
+        int countryCount = in.readInt();
+        HashMap<String, Map<String, List<BasicCity>>> countries = new HashMap<>(countryCount * 2);
+        for (int i = 0; i < countryCount; i++) {
+            String country = BinaryStrings.read(in);
+            int stateCount = in.readInt();
+            HashMap<String, List<BasicCity>> states = new HashMap<>(stateCount * 2);
+            for (int j = 0; j < stateCount; j++) {
+                String state = BinaryStrings.read(in);
+                int cityCount = in.readInt();
+                ArrayList<BasicCity> cities = new ArrayList<>(cityCount);
+                for (int k = 0; k < cityCount; k++) {
+                    cities.add(new BasicCity(BinaryStrings.read(in), BinaryStrings.read(in)));
+                }
+                states.put(state, Collections.unmodifiableList(cities));
+            }
+            countries.put(country, Collections.unmodifiableMap(states));
+        }
+        return CitySnapshot.of(countries, version);
+    }
+
+    /**
+     * Writes a batch of changes.
+     * @param out the stream to the follower.
+     * @param batch the changes.
+     * @throws IOException if the follower can't be reached.
+     */
+    static void writeBatch(DataOutputStream out, ChangeBatch batch) throws IOException {
+        out.writeByte(BATCH);
+        out.writeLong(batch.getPublishedAt());
+        out.writeInt(batch.getChanges().size());
+        for (Change change : batch.getChanges()) {
+            City city = change.getCity();
+            out.writeLong(change.getSequence());
+            out.writeBoolean(change.isRemoved());
+            BinaryStrings.write(out, city.getName());
+            BinaryStrings.write(out, city.getState());
+            BinaryStrings.write(out, city.getCountry());
+            if (!change.isRemoved()) {
+                BinaryStrings.write(out, city.getFoundingDate());
+            }
+        }
+    }
+
+    /**
+     * Reads a batch of changes, the marker byte must already have been read.
+     * @param in the stream from the leader.
+     * @return the changes.
+     * @throws IOException if the leader can't be reached.
+     */
+    static ChangeBatch readBatch(DataInputStream in) throws IOException {
+        long publishedAt = in.readLong();
+        int count = in.readInt();
+        ArrayList<Change> changes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long sequence = in.readLong();
+            boolean removed = in.readBoolean();
+            String name = BinaryStrings.read(in);
+            String state = BinaryStrings.read(in);
+            String country = BinaryStrings.read(in);
+            String foundingDate = removed ? null : BinaryStrings.read(in);
+            changes.add(new Change(removed, new City(name, state, country, foundingDate), sequence));
+        }
+        return new ChangeBatch(publishedAt, changes);
+    }
+
+    /**
+     * Writes a heartbeat.
+     * @param out the stream to the follower.
+     * @param version the leader's latest version.
+     * @throws IOException if the follower can't be reached.
+     */
+    static void writeHeartbeat(DataOutputStream out, long version) throws IOException {
+        out.writeByte(HEARTBEAT);
+        out.writeLong(version);
+    }
+}
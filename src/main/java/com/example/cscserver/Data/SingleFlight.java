@@ -0,0 +1,73 @@
+package com.example.cscserver.Data;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces identical concurrent computations, so only the first caller does
+ * the work and every caller that arrives while it runs shares the result.
+ * @param <K> the key identifying identical computations.
+ * @param <V> the result of a computation.
+ * @author Karl Clifford
+ * @version 1.0.0
+ */
+final class SingleFlight<K, V> {
+
+    /**
+     * The computations currently running, by key.
+     */
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Counts the computations that were run.
+     */
+    private final Counter executed;
+
+    /**
+     * Counts the callers that shared another caller's result.
+     */
+    private final Counter coalesced;
+
+    /**
+     * The constructor of this class.
+     * @param metricName the name the executed and coalesced counters are registered under.
+     */
+    SingleFlight(String metricName) {
+        executed = Metrics.counter(metricName, "outcome", "executed");
+        coalesced = Metrics.counter(metricName, "outcome", "coalesced");
+    }
+
+    /**
+     * Runs a computation, or waits for an identical one that is already running.
+     * @param key identifies identical computations.
+     * @param work the computation.
+     * @return the result of the computation.
+     */
+    V execute(K key, Supplier<V> work) {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            // Someone else is already computing this, share their result.
+            coalesced.increment();
+            return existing.join();
+        }
+
+        executed.increment();
+        try {
+            V result = work.get();
+            flight.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            // Errors must complete the flight too, or the callers sharing it would wait forever.
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            // Later callers start a new computation.
+            inFlight.remove(key, flight);
+        }
+    }
+}
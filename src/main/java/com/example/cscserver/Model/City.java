@@ -7,6 +7,9 @@ import jakarta.validation.constraints.Pattern;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.function.Predicate;
+
+import static java.util.regex.Pattern.compile;
 
 /**
  * Represents a City object used for JSON serialisation.
@@ -26,6 +29,12 @@ public class City {
     private static final String VALID_DATE =
             "^(?!0000-00-00)(\\d{4}-\\d{2}-\\d{2}|(19|20)"
                    + "\\d{8}|214748364[0-7]|-214748364[0-8])(?:Z|[+-]\\d{2}:\\d{2})?$";
+
+    /**
+     * The compiled form of VALID_DATE, used when checking many dates.
+     */
+    private static final Predicate<String> VALID_DATE_FORMAT = compile(VALID_DATE).asMatchPredicate();
+
     /**
      * The name of the city.
      */
@@ -130,6 +139,16 @@ public class City {
         return isValid;
     }
 
+    /**
+     * Checks a date is in the format yyyy-MM-dd or a 32-bit epoch timestamp,
+     * the same rule applied to the foundingDate field.
+     * @param date the date to check.
+     * @return true if the date is in a valid format.
+     */
+    public static boolean isDateFormatValid(String date) {
+        return date != null && VALID_DATE_FORMAT.test(date);
+    }
+
     /**
      * Converts a string representation of a date in the format -999999999 to
      * 999999999 or a valid date format dd-MM-yyyy to a LocalDate.
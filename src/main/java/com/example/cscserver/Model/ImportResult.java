@@ -0,0 +1,116 @@
+package com.example.cscserver.Model;
+
+import com.google.gson.Gson;
+
+/**
+ * Summarises a bulk import, used for JSON serialisation.
+ * @author Karl Clifford
+ * @version 1.0.0
+ */
+public class ImportResult {
+
+    /**
+     * The file that was imported.
+     */
+    private final String file;
+
+    /**
+     * The number of records read from the file.
+     */
+    private final long rowsRead;
+
+    /**
+     * The number of cities added to the server.
+     */
+    private final long rowsStored;
+
+    /**
+     * The number of records that failed validation.
+     */
+    private final long rowsRejected;
+
+    /**
+     * The number of valid records skipped because the city already existed.
+     */
+    private final long duplicates;
+
+    /**
+     * How long the import took in milliseconds.
+     */
+    private final long elapsedMillis;
+
+    /**
+     * The import throughput in records per second.
+     */
+    private final long rowsPerSecond;
+
+    /**
+     * The constructor of this class.
+     * @param file the file that was imported.
+     * @param rowsRead the number of records read from the file.
+     * @param rowsStored the number of cities added to the server.
+     * @param rowsRejected the number of records that failed validation.
+     * @param elapsedMillis how long the import took in milliseconds.
+     */
+    public ImportResult(String file, long rowsRead, long rowsStored, long rowsRejected, long elapsedMillis) {
+        this.file = file;
+        this.rowsRead = rowsRead;
+        this.rowsStored = rowsStored;
+        this.rowsRejected = rowsRejected;
+        this.duplicates = rowsRead - rowsRejected - rowsStored;
+        this.elapsedMillis = elapsedMillis;
+        this.rowsPerSecond = rowsRead * 1000 / Math.max(1, elapsedMillis);
+    }
+
+    /**
+     * Gets the number of records read from the file.
+     * @return the number of records read.
+     */
+    public long getRowsRead() {
+        return rowsRead;
+    }
+
+    /**
+     * Gets the number of records that failed validation.
+     * @return the number of records rejected.
+     */
+    public long getRowsRejected() {
+        return rowsRejected;
+    }
+
+    /**
+     * Gets the number of cities added to the server.
+     * @return the number of cities stored.
+     */
+    public long getRowsStored() {
+        return rowsStored;
+    }
+
+    /**
+     * Gets the import throughput.
+     * @return records read per second.
+     */
+    public long getRowsPerSecond() {
+        return rowsPerSecond;
+    }
+
+    /**
+     * Converts the object to json.
+     * @return a JSON representation of this class.
+     */
+    public String toJson() {
+        Gson gson = new Gson();
+        return gson.toJson(this);
+    }
+
+    /**
+     * Describes the import for the server logs.
+     * @return a one line summary.
+     */
+    @Override
+    public String toString() {
+        return "Imported " + rowsStored + " of " + rowsRead + " rows from " + file
+                + " (" + rowsRejected + " rejected, " + duplicates + " duplicates) in "
+                + elapsedMillis + "ms, " + rowsPerSecond + " rows/sec";
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.cscserver;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.awt.AWTError;
+import java.awt.Desktop;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+
+/**
+ * Runs once the server is ready to take requests. Logs how long startup took,
+ * points developers at the docs and ends AppCDS training runs.
+ * @author Karl Clifford
+ * @version 1.0.0
+ */
+@Component
+public class StartupListener {
+
+    /**
+     * Handles server logs.
+     */
+    private static final Logger LOG =
+            LoggerFactory.getLogger(StartupListener.class);
+
+    /**
+     * Whether to try opening the developer docs in a web browser.
+     */
+    private final boolean openBrowser;
+
+    /**
+     * Whether to shut down as soon as the server is ready, used to record a class-data sharing archive.
+     */
+    private final boolean exitOnReady;
+
+    /**
+     * The constructor of this class.
+     * @param openBrowser whether to try opening the developer docs in a web browser.
+     * @param exitOnReady whether to shut down as soon as the server is ready.
+     */
+    public StartupListener(@Value("${csc.docs.open-browser:false}") boolean openBrowser,
+                           @Value("${csc.startup.exit-on-ready:false}") boolean exitOnReady) {
+        this.openBrowser = openBrowser;
+        this.exitOnReady = exitOnReady;
+    }
+
+    /**
+     * Handles the server becoming ready.
+     * @param event the ready event.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady(ApplicationReadyEvent event) {
+        LOG.info("Ready to take requests " + ManagementFactory.getRuntimeMXBean().getUptime()
+                + "ms after the JVM started");
+
+        if (exitOnReady) {
+            // This is a training run, exiting lets the JVM write the class-data sharing archive.
+            System.exit(SpringApplication.exit(event.getApplicationContext()));
+        }
+
+        String port = event.getApplicationContext().getEnvironment().getProperty("local.server.port", "8080");
+        String docsUri = "http://localhost:" + port + "/docs.html";
+        if (!openBrowser || !DocsBrowser.open(docsUri)) {
+            // Headless or not wanted, log the URL instead.
+            LOG.info("Access the developer docs at " + docsUri);
+        }
+    }
+
+    /**
+     * Opens the docs in a web browser. Kept in its own class so the AWT
+     * classes are only loaded when a browser is actually wanted.
+     */
+    private static final class DocsBrowser {
+
+        /**
+         * Tries to open a page in the default web browser.
+         * @param uri the page to open.
+         * @return true if the browser was opened.
+         */
+        private static boolean open(String uri) {
+            if (!hasDisplay()) {
+                // Nothing to show a browser on, leave AWT headless.
+                return false;
+            }
+            // Spring Boot runs headless by default, AWT hasn't been loaded yet so this can still be changed.
+            System.setProperty("java.awt.headless", "false");
+            try {
+                // Check that this device has support for a web browser.
+                if (Desktop.isDesktopSupported()
+                        && Desktop.getDesktop().isSupported(Desktop.Action.BROWSE)) {
+                    Desktop.getDesktop().browse(new URI(uri));
+                    return true;
+                }
+            } catch (Exception | LinkageError | AWTError e) {
+                // This device doesn't support a web browser, or the native AWT libraries or display are missing.
+                LOG.debug("Unable to open a web browser: " + e);
+            }
+            return false;
+        }
+
+        /**
+         * Checks if there is a screen to open a browser on. Windows and macOS always have one,
+         * other systems need an X11 or Wayland display.
+         * @return true if a browser could be shown.
+         */
+        private static boolean hasDisplay() {
+            String os = System.getProperty("os.name", "").toLowerCase();
+            if (os.startsWith("windows") || os.startsWith("mac")) {
+                return true;
+            }
+            return System.getenv("DISPLAY") != null || System.getenv("WAYLAND_DISPLAY") != null;
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package com.example.cscserver.api;
+
+import com.example.cscserver.Model.ErrorMessage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Protects the server from overload. Each client is rate limited, then reads,
+ * reads of every city and writes each have their own adaptive concurrency limit,
+ * so slow full listings can't starve cheap reads. Exports stream for as long as
+ * the client takes to read them, so they have a fixed limit of their own and hold
+ * their slot until the response is complete. Requests that can't be admitted are
+ * rejected straight away with a Retry-After header instead of queueing without bound.
+ * @author Karl Clifford
+ * @version 1.0.0
+ */
+@Component
+public class AdmissionControlFilter extends OncePerRequestFilter {
+
+    /**
+     * Whether admission control is switched on.
+     */
+    private final boolean enabled;
+
+    /**
+     * Limits concurrent GET requests for one country or state.
+     */
+    private final ConcurrencyLimiter reads;
+
+    /**
+     * Limits concurrent GET requests that read every city.
+     */
+    private final ConcurrencyLimiter scans;
+
+    /**
+     * Limits concurrent POST and DELETE requests.
+     */
+    private final ConcurrencyLimiter writes;
+
+    /**
+     * Limits concurrent exports, the limit doesn't adapt since exports take as long as the client.
+     */
+    private final ConcurrencyLimiter exports;
+
+    /**
+     * Limits the request rate of each client.
+     */
+    private final ClientRateLimiter clients;
+
+    /**
+     * Recognises requests routed here by another node.
+     */
+    private final ShardRouter shards;
+
+    /**
+     * Counts requests rejected by the rate limit.
+     */
+    private final Counter rateLimited = Metrics.counter("csc.admission.rejected", "reason", "rate_limited");
+
+    /**
+     * Counts requests shed because the server is overloaded.
+     */
+    private final Counter shed = Metrics.counter("csc.admission.rejected", "reason", "overloaded");
+
+    /**
+     * The constructor of this class.
+     * @param enabled whether admission control is switched on.
+     * @param maxReads the most GET requests for one country or state allowed to run at once.
+     * @param maxScans the most GET requests for every city allowed to run at once.
+     * @param maxWrites the most POST and DELETE requests allowed to run at once.
+     * @param maxExports the most exports allowed to run at once.
+     * @param maxQueueMillis the longest a request may wait to be admitted.
+     * @param latencyTolerance how many times slower than usual requests can get before the limits shrink.
+     * @param clientRate the sustained requests per second allowed for each client.
+     * @param clientBurst the number of requests a client can make at once.
+     * @param maxClients the most clients whose rate limits are remembered at once.
+     * @param shards recognises requests routed here by another node.
+     */
+    public AdmissionControlFilter(
+            @Value("${csc.admission.enabled:true}") boolean enabled,
+            @Value("${csc.admission.max-reads:64}") int maxReads,
+            @Value("${csc.admission.max-scans:8}") int maxScans,
+            @Value("${csc.admission.max-writes:16}") int maxWrites,
+            @Value("${csc.admission.max-exports:2}") int maxExports,
+            @Value("${csc.admission.max-queue-millis:100}") long maxQueueMillis,
+            @Value("${csc.admission.latency-tolerance:2.0}") double latencyTolerance,
+            @Value("${csc.admission.client-rate:200}") double clientRate,
+            @Value("${csc.admission.client-burst:400}") int clientBurst,
+            @Value("${csc.admission.max-clients:100000}") int maxClients,
+            ShardRouter shards) {
+        this.enabled = enabled;
+        this.shards = shards;
+        this.reads = new ConcurrencyLimiter(1, maxReads, maxQueueMillis, latencyTolerance);
+        this.scans = new ConcurrencyLimiter(1, maxScans, maxQueueMillis, latencyTolerance);
+        this.writes = new ConcurrencyLimiter(1, maxWrites, maxQueueMillis, latencyTolerance);
+        this.exports = new ConcurrencyLimiter(maxExports, maxExports, maxQueueMillis, latencyTolerance);
+        this.clients = new ClientRateLimiter(clientRate, clientBurst, maxClients);
+        Metrics.gauge("csc.admission.limit", Tags.of("class", "read"),
+                reads, ConcurrencyLimiter::getLimit);
+        Metrics.gauge("csc.admission.limit", Tags.of("class", "scan"),
+                scans, ConcurrencyLimiter::getLimit);
+        Metrics.gauge("csc.admission.limit", Tags.of("class", "write"),
+                writes, ConcurrencyLimiter::getLimit);
+        Metrics.gauge("csc.admission.limit", Tags.of("class", "export"),
+                exports, ConcurrencyLimiter::getLimit);
+    }
+
+    /**
+     * Only API requests are admission controlled.
+     * @param request the request.
+     * @return true if the request isn't for the API.
+     */
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled || !request.getRequestURI().startsWith("/api/");
+    }
+
+    /**
+     * Admits, rate limits or sheds a request.
+     * @param request the request.
+     * @param response the response.
+     * @param chain the rest of the filters.
+     * @throws ServletException if a later filter fails.
+     * @throws IOException if the response can't be written.
+     */
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        // Check this client hasn't used up its share, requests from other shards were limited where they arrived.
+        long retryAfter = shards.isFromNode(request) ? 0 : clients.tryAcquire(request.getRemoteAddr());
+        if (retryAfter > 0) {
+            rateLimited.increment();
+            reject(response, HttpStatus.TOO_MANY_REQUESTS, retryAfter, "Too many requests");
+            return;
+        }
+
+        // Wait briefly for a slot, shedding the request if none frees up.
+        ConcurrencyLimiter limiter = limiterFor(request);
+        boolean admitted;
+        try {
+            admitted = limiter.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            admitted = false;
+        }
+        if (!admitted) {
+            shed.increment();
+            reject(response, HttpStatus.SERVICE_UNAVAILABLE, 1, "Server is overloaded, please retry");
+            return;
+        }
+
+        long start = System.nanoTime();
+        boolean async = false;
+        try {
+            chain.doFilter(request, response);
+            async = request.isAsyncStarted();
+        } finally {
+            if (async) {
+                // The response is still being written on another thread, hold the slot until it is complete.
+                request.getAsyncContext().addListener(new SlotRelease(limiter, start));
+            } else {
+                limiter.release(System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * Picks the limiter for a request by how expensive it is.
+     * @param request the request.
+     * @return the limiter for writes, exports, reads of every city or other reads.
+     */
+    private ConcurrencyLimiter limiterFor(HttpServletRequest request) {
+        if (!"GET".equals(request.getMethod())) {
+            return writes;
+        }
+        String uri = request.getRequestURI();
+        if (uri.startsWith("/api/v1/export")) {
+            return exports;
+        }
+        // Listing every city sorts the whole data set.
+        if (uri.equals("/api/v1/city")) {
+            return scans;
+        }
+        return reads;
+    }
+
+    /**
+     * Writes an error response telling the client when to retry.
+     * @param response the response.
+     * @param status the error status.
+     * @param retryAfterSeconds the seconds the client should wait before retrying.
+     * @param message the error message.
+     * @throws IOException if the response can't be written.
+     */
+    private static void reject(HttpServletResponse response, HttpStatus status, long retryAfterSeconds,
+                               String message) throws IOException {
+        response.setStatus(status.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds));
+        response.setContentType("application/json");
+        response.getWriter().write(new ErrorMessage(status.value(), message).toJson());
+    }
+
+    /**
+     * Frees a request's slot once its asynchronous response is complete, whether it finished, timed out or failed.
+     */
+    private static final class SlotRelease implements AsyncListener {
+
+        /**
+         * The limiter the request was admitted by.
+         */
+        private final ConcurrencyLimiter limiter;
+
+        /**
+         * When the request was admitted.
+         */
+        private final long start;
+
+        /**
+         * Whether the slot has been freed, so it is only freed once.
+         */
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        /**
+         * The constructor of this class.
+         * @param limiter the limiter the request was admitted by.
+         * @param start when the request was admitted.
+         */
+        private SlotRelease(ConcurrencyLimiter limiter, long start) {
+            this.limiter = limiter;
+            this.start = start;
+        }
+
+        /**
+         * Frees the slot.
+         * @param event the completed request.
+         */
+        @Override
+        public void onComplete(AsyncEvent event) {
+            if (released.compareAndSet(false, true)) {
+                limiter.release(System.nanoTime() - start);
+            }
+        }
+
+        /**
+         * Nothing to do, onComplete follows.
+         * @param event the timed out request.
+         */
+        @Override
+        public void onTimeout(AsyncEvent event) {
+        }
+
+        /**
+         * Nothing to do, onComplete follows.
+         * @param event the failed request.
+         */
+        @Override
+        public void onError(AsyncEvent event) {
+        }
+
+        /**
+         * Keeps listening if the request goes asynchronous again, listeners are dropped each time.
+         * @param event the restarted request.
+         */
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            event.getAsyncContext().addListener(this);
+        }
+    }
+}
@@ -1,11 +1,15 @@
 package com.example.cscserver.api;
 
+import com.example.cscserver.Data.CityExporter;
+import com.example.cscserver.Data.CityImporter;
 import com.example.cscserver.Data.DataService;
 import com.example.cscserver.Model.City;
 import com.example.cscserver.Model.ErrorMessage;
 import com.example.cscserver.configuration.ErrorWrapper;
+import com.example.cscserver.configuration.WireFormat;
 import com.google.gson.Gson;
 import jakarta.inject.Singleton;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.ConstraintViolation;
 import jakarta.validation.ConstraintViolationException;
 import jakarta.validation.Valid;
@@ -13,6 +17,8 @@ import jakarta.validation.constraints.NotBlank;
 import jakarta.ws.rs.QueryParam;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.converter.HttpMessageNotReadableException;
@@ -30,10 +36,20 @@ import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * The controller for the API which handles requests from the client.
@@ -62,7 +78,52 @@ public class ApiController {
     /**
      * The service that handles CRUD operations on the server data.
      */
-    private final DataService data = new DataService();
+    private final DataService data;
+
+    /**
+     * Bulk loads cities from files on the server.
+     */
+    private final CityImporter importer;
+
+    /**
+     * Streams every city on the server.
+     */
+    private final CityExporter exporter;
+
+    /**
+     * Sends requests for countries owned by other nodes to those nodes.
+     */
+    private final ShardRouter shards;
+
+    /**
+     * The longest a read waits for the version the client asked for.
+     */
+    private final long readWaitMillis;
+
+    /**
+     * The longest a request waits for the data service to answer.
+     */
+    private final long timeoutMillis;
+
+    /**
+     * The constructor of this class.
+     * @param data the service that handles CRUD operations on the server data.
+     * @param importer bulk loads cities from files on the server.
+     * @param exporter streams every city on the server.
+     * @param shards sends requests for countries owned by other nodes to those nodes.
+     * @param readWaitMillis the longest a read waits for the version the client asked for.
+     * @param timeoutMillis the longest a request waits for the data service to answer.
+     */
+    public ApiController(DataService data, CityImporter importer, CityExporter exporter, ShardRouter shards,
+                         @Value("${csc.replication.read-wait-millis:1000}") long readWaitMillis,
+                         @Value("${csc.data.timeout-millis:5000}") long timeoutMillis) {
+        this.data = data;
+        this.importer = importer;
+        this.exporter = exporter;
+        this.shards = shards;
+        this.readWaitMillis = readWaitMillis;
+        this.timeoutMillis = timeoutMillis;
+    }
 
     /**
      * Just a simple query to check the service is running.
@@ -77,13 +138,19 @@ public class ApiController {
     /**
      * The addCity method, verifies and adds a city to the server.
      * @param city the city to add.
-     * @return response code 204 if successful, 400 due to bad JSON formatting,
-     * 409 if the city already exists and 500 if there was a server error.
+     * @param request the request, used to route it to the node that owns the country.
+     * @return response code 204 if successful, 400 due to bad JSON formatting, 405 if this server is a read replica,
+     * 409 if the city already exists, 500 if there was a server error and 503 if the server is too busy to answer.
      */
     @PostMapping(value = "/city", consumes = {"application/json"})
-    public ResponseEntity<?> addCity(@Valid @RequestBody City city) {
+    public ResponseEntity<?> addCity(@Valid @RequestBody City city, HttpServletRequest request) {
         ResponseEntity<?> response = new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
 
+        // Read replicas only take changes from the leader.
+        if (data.isReadOnly()) {
+            return readOnly();
+        }
+
         /*
          * Spring boot automatically passes values to the City object,
          * we need to check that the date is valid.
@@ -97,9 +164,16 @@ public class ApiController {
                 return new ResponseEntity<>(errorMessage.toJson(), HttpStatus.BAD_REQUEST);
             }
 
+            // Check if another node owns this country.
+            if (shards.isRemote(request, city.getCountry())) {
+                return shards.forward(request, city.getCountry(), new Gson().toJson(city));
+            }
+
             // Try to add the city.
             try {
-                response = data.storeCity(city).get();
+                response = data.storeCity(city).get(timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                response = timedOut();
             } catch (InterruptedException | ExecutionException e) {
                 LOG.error("Error adding city " + city.getName() + ": " + e);
             }
@@ -119,18 +193,33 @@ public class ApiController {
      * @param name the name of the city to target.
      * @param state the state of the city to target.
      * @param country the country of the city to target.
-     * @return response code 204 if success, 409 due to bad formatting or 404 if the city doesn't exist.
+     * @param request the request, used to route it to the node that owns the country.
+     * @return response code 204 if success, 409 due to bad formatting, 404 if the city doesn't exist,
+     * 405 if this server is a read replica or 503 if the server is too busy to answer.
      */
     @DeleteMapping("/city")
     public ResponseEntity<?> deleteCity(
             @Valid @NotBlank(message = "name must not be blank") @QueryParam("name") String name,
             @Valid @NotBlank(message = "state must not be blank") @QueryParam("state") String state,
-            @Valid @NotBlank(message = "country must not be blank") @QueryParam("country") String country) {
+            @Valid @NotBlank(message = "country must not be blank") @QueryParam("country") String country,
+            HttpServletRequest request) {
+
+        // Read replicas only take changes from the leader.
+        if (data.isReadOnly()) {
+            return readOnly();
+        }
+
+        // Check if another node owns this country.
+        if (shards.isRemote(request, country)) {
+            return shards.forward(request, country, null);
+        }
 
         // Try to delete the city.
         ResponseEntity<?> response = new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
         try {
-            response = data.removeCity(name, state, country).get();
+            response = data.removeCity(name, state, country).get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            response = timedOut();
         } catch (InterruptedException | ExecutionException e) {
             LOG.error("Error deleting the city " + name + ": " + e);
         }
@@ -141,10 +230,18 @@ public class ApiController {
     /**
      * Gets all the cities stored on the server.
      * @param date (optional) maximum date to filter the cities by.
-     * @return response code 200 if success with JSON city data or 404 if no cities exist.
+     * @param accept (optional) the formats the client accepts, JSON if missing.
+     * @param minSequence (optional) the X-Csc-Sequence of a write the response must include.
+     * @param request the request, used to collect the cities from every node.
+     * @return response code 200 if success with city data, 404 if no cities exist
+     * or 503 if a server hasn't caught up to minSequence or is too busy to answer.
      */
-    @GetMapping(value = "/city", produces = {"application/json"})
-    public ResponseEntity<?> getCities(@QueryParam("dateFounded") String date) {
+    @GetMapping(value = "/city", produces = {"application/json", "application/cbor",
+            "application/x-jackson-smile", "application/x-msgpack"})
+    public ResponseEntity<?> getCities(@QueryParam("dateFounded") String date,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestParam(value = "minSequence", required = false) Long minSequence,
+            HttpServletRequest request) {
         ResponseEntity<?> response = null;
 
         // Date is optional so check if the user has included it.
@@ -157,11 +254,24 @@ public class ApiController {
             }
         }
 
+        // Wait until the client's own writes are visible.
+        if (response == null) {
+            response = awaitSequence(minSequence);
+        }
+
+        // Collect the cities from every node, each waits for minSequence too.
+        if (response == null && shards.isRemote(request, null)) {
+            response = shards.gather(date, minSequence, WireFormat.fromAccept(accept));
+        }
+
         // Check we haven't encountered an error.
         if (response == null) {
             // Try to get the cities.
             try {
-                response = data.getCities(null, null, date).get();
+                response = data.getCities(null, null, date, WireFormat.fromAccept(accept))
+                        .get(timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                response = timedOut();
             } catch (InterruptedException | ExecutionException e) {
                 response = new ResponseEntity<>(HttpStatus.NOT_FOUND);
             }
@@ -173,14 +283,36 @@ public class ApiController {
     /**
      * Gets all the cities stored on the server, filtered by country.
      * @param country the country to target.
-     * @return response code 200 if success with JSON city data or 404 if no cities exist.
+     * @param accept (optional) the formats the client accepts, JSON if missing.
+     * @param minSequence (optional) the X-Csc-Sequence of a write the response must include.
+     * @param request the request, used to route it to the node that owns the country.
+     * @return response code 200 if success with city data, 404 if no cities exist
+     * or 503 if this server hasn't caught up to minSequence or is too busy to answer.
      */
-    @GetMapping(value = "city/{country}", produces = {"application/json"})
-    public ResponseEntity<?> getCitiesByCountry(@PathVariable("country") String country) {
+    @GetMapping(value = "city/{country}", produces = {"application/json", "application/cbor",
+            "application/x-jackson-smile", "application/x-msgpack"})
+    public ResponseEntity<?> getCitiesByCountry(@PathVariable("country") String country,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestParam(value = "minSequence", required = false) Long minSequence,
+            HttpServletRequest request) {
+        // Check if another node owns this country.
+        if (shards.isRemote(request, country)) {
+            return shards.forward(request, country, null);
+        }
+
+        // Wait until the client's own writes are visible.
+        ResponseEntity<?> behind = awaitSequence(minSequence);
+        if (behind != null) {
+            return behind;
+        }
+
         // Try to get the cities.
         ResponseEntity<?> response = new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
         try {
-            response = data.getCities(country, null, null).get();
+            response = data.getCities(country, null, null, WireFormat.fromAccept(accept))
+                    .get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            response = timedOut();
         } catch (InterruptedException | ExecutionException e) {
             LOG.error("Error getting cities in country: " + country + e);
         }
@@ -191,23 +323,192 @@ public class ApiController {
      * Gets all the cities stored on the server, filtered by country and state.
      * @param country the country to target.
      * @param state the state to target.
-     * @return response code 200 if success with JSON city data or 404 if no cities exist.
+     * @param accept (optional) the formats the client accepts, JSON if missing.
+     * @param minSequence (optional) the X-Csc-Sequence of a write the response must include.
+     * @param request the request, used to route it to the node that owns the country.
+     * @return response code 200 if success with city data, 404 if no cities exist
+     * or 503 if this server hasn't caught up to minSequence or is too busy to answer.
      */
-    @GetMapping(value = "city/{country}/{state}", produces = {"application/json"})
+    @GetMapping(value = "city/{country}/{state}", produces = {"application/json", "application/cbor",
+            "application/x-jackson-smile", "application/x-msgpack"})
     public ResponseEntity<?> getCitiesByCountry(
             @PathVariable("country") String country,
-            @PathVariable("state") String state) {
+            @PathVariable("state") String state,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestParam(value = "minSequence", required = false) Long minSequence,
+            HttpServletRequest request) {
+        // Check if another node owns this country.
+        if (shards.isRemote(request, country)) {
+            return shards.forward(request, country, null);
+        }
+
+        // Wait until the client's own writes are visible.
+        ResponseEntity<?> behind = awaitSequence(minSequence);
+        if (behind != null) {
+            return behind;
+        }
 
         // Try to get the cities.
         ResponseEntity<?> response = new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
         try {
-            response = data.getCities(country, state, null).get();
+            response = data.getCities(country, state, null, WireFormat.fromAccept(accept))
+                    .get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            response = timedOut();
         } catch (InterruptedException | ExecutionException e) {
             LOG.error("Error getting cities in country: " + country + " and state: " + state + e);
         }
         return response;
     }
 
+    /**
+     * Imports a CSV or NDJSON file of cities from the server's import directory.
+     * @param file the name of the file in the import directory.
+     * @param format (optional) csv or ndjson, worked out from the file name if missing.
+     * @return response code 200 with a summary of the import, 400 if the request is invalid,
+     * 404 if the file doesn't exist, 405 if this server is a read replica or sharded
+     * and 500 if there was a server error.
+     */
+    @PostMapping(value = "/import", produces = {"application/json"})
+    public ResponseEntity<?> importCities(@RequestParam("file") String file,
+                                          @RequestParam(value = "format", required = false) String format) {
+        ResponseEntity<?> response = new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+
+        // Read replicas only take changes from the leader.
+        if (data.isReadOnly()) {
+            return readOnly();
+        }
+
+        // Every row would be stored here, whichever node owns its country.
+        if (shards.isEnabled()) {
+            ErrorMessage error = new ErrorMessage(HttpStatus.METHOD_NOT_ALLOWED.value(),
+                    "Imports aren't available while the countries are split between nodes");
+            return new ResponseEntity<>(error.toJson(), HttpStatus.METHOD_NOT_ALLOWED);
+        }
+
+        Path path;
+        CityImporter.Format fileFormat;
+        try {
+            path = importer.resolve(file);
+            fileFormat = format == null
+                    ? CityImporter.Format.fromFileName(file)
+                    : CityImporter.Format.valueOf(format.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            ErrorMessage error = new ErrorMessage(HttpStatus.BAD_REQUEST.value(),
+                    "file must be inside the import directory and format must be csv or ndjson");
+            return new ResponseEntity<>(error.toJson(), HttpStatus.BAD_REQUEST);
+        }
+
+        // Check the file exists.
+        if (!Files.isRegularFile(path)) {
+            ErrorMessage error = new ErrorMessage(HttpStatus.NOT_FOUND.value(), "file not found");
+            return new ResponseEntity<>(error.toJson(), HttpStatus.NOT_FOUND);
+        }
+
+        // Try to import the file.
+        try {
+            response = new ResponseEntity<>(importer.importFile(path, fileFormat).toJson(), HttpStatus.OK);
+        } catch (IOException e) {
+            LOG.error("Error importing " + file + ": " + e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.error("Import of " + file + " was interrupted");
+        }
+
+        return response;
+    }
+
+    /**
+     * Streams every city on the server using chunked transfer encoding.
+     * @param format (optional) ndjson (default) or csv.
+     * @param acceptEncoding (optional) the response is gzip compressed if this includes gzip.
+     * @return response code 200 with the cities or 400 if the format is invalid.
+     */
+    @GetMapping(value = "/export")
+    public ResponseEntity<StreamingResponseBody> exportCities(
+            @RequestParam(value = "format", defaultValue = "ndjson") String format,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        CityImporter.Format exportFormat;
+        try {
+            exportFormat = CityImporter.Format.valueOf(format.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            // Spring only streams the body if the declared type is StreamingResponseBody, so the error is one too.
+            byte[] error = new ErrorMessage(HttpStatus.BAD_REQUEST.value(), "format must be csv or ndjson")
+                    .toJson().getBytes(StandardCharsets.UTF_8);
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .header(HttpHeaders.CONTENT_TYPE, "application/json")
+                    .body(out -> out.write(error));
+        }
+
+        boolean gzip = acceptEncoding != null && acceptEncoding.toLowerCase(Locale.ROOT).contains("gzip");
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.CONTENT_TYPE,
+                exportFormat == CityImporter.Format.CSV ? "text/csv" : "application/x-ndjson");
+        headers.set(HttpHeaders.CONTENT_DISPOSITION,
+                "attachment; filename=\"cities." + exportFormat.name().toLowerCase(Locale.ROOT) + "\"");
+        if (gzip) {
+            headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+
+        // No content length is set, so the body is sent in chunks as it is written.
+        StreamingResponseBody body = out -> {
+            if (gzip) {
+                GZIPOutputStream compressed = new GZIPOutputStream(out);
+                exporter.export(compressed, exportFormat);
+                compressed.finish();
+            } else {
+                exporter.export(out, exportFormat);
+            }
+        };
+        return new ResponseEntity<>(body, headers, HttpStatus.OK);
+    }
+
+    /**
+     * Waits until this server has caught up to the version a client asked for.
+     * @param minSequence the version the client needs to see, null if it doesn't mind.
+     * @return null once the version is visible or a 503 error response if it isn't visible in time.
+     */
+    private ResponseEntity<?> awaitSequence(Long minSequence) {
+        if (minSequence == null) {
+            return null;
+        }
+
+        try {
+            if (data.awaitVersion(minSequence, readWaitMillis)) {
+                return null;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        ErrorMessage error = new ErrorMessage(HttpStatus.SERVICE_UNAVAILABLE.value(),
+                "This server hasn't caught up to sequence " + minSequence + " yet, please retry");
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(error.toJson());
+    }
+
+    /**
+     * Builds the response sent when the data service didn't answer in time.
+     * @return 503 error response.
+     */
+    private static ResponseEntity<?> timedOut() {
+        ErrorMessage error = new ErrorMessage(HttpStatus.SERVICE_UNAVAILABLE.value(),
+                "The server is busy, please retry");
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(error.toJson());
+    }
+
+    /**
+     * Builds the response sent when a client tries to change the data on a read replica.
+     * @return 405 error response.
+     */
+    private static ResponseEntity<?> readOnly() {
+        ErrorMessage error = new ErrorMessage(HttpStatus.METHOD_NOT_ALLOWED.value(),
+                "This server is a read replica, send changes to the leader");
+        return new ResponseEntity<>(error.toJson(), HttpStatus.METHOD_NOT_ALLOWED);
+    }
+
     /**
      * Builds json objects containing constraint errors thrown by the server.
      * @param ex the constraint violations from the server.
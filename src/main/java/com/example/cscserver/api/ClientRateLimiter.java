@@ -0,0 +1,169 @@
+package com.example.cscserver.api;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Per-client token bucket rate limiting. Every client has its own bucket, kept
+ * in one of a fixed number of striped maps so unrelated clients rarely contend
+ * on the same lock. Buckets of idle clients expire and each stripe holds a
+ * bounded number of clients, so memory stays bounded however many connect.
+ * @author Karl Clifford
+ * @version 1.0.0
+ */
+final class ClientRateLimiter {
+
+    /**
+     * The number of maps clients are spread across, a power of two.
+     */
+    private static final int STRIPES = 64;
+
+    /**
+     * The client buckets, spread across the stripes by client.
+     */
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    /**
+     * Tokens added to each bucket per second.
+     */
+    private final double tokensPerSecond;
+
+    /**
+     * The most tokens a bucket can hold.
+     */
+    private final double burst;
+
+    /**
+     * How long an empty bucket takes to fill up, idle buckets are forgotten after this.
+     */
+    private final long fullAfterNanos;
+
+    /**
+     * The most clients remembered by each stripe.
+     */
+    private final int maxClientsPerStripe;
+
+    /**
+     * The constructor of this class.
+     * @param requestsPerSecond the sustained requests per second allowed for each client.
+     * @param burst the number of requests a client can make at once.
+     * @param maxClients the most clients remembered at once, the least recently seen are forgotten first.
+     */
+    ClientRateLimiter(double requestsPerSecond, int burst, int maxClients) {
+        this.tokensPerSecond = requestsPerSecond;
+        this.burst = burst;
+        this.fullAfterNanos = (long) Math.ceil(burst / requestsPerSecond * 1e9);
+        this.maxClientsPerStripe = Math.max(1, maxClients / STRIPES);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Takes a token for a client.
+     * @param client identifies the client, i.e. its address.
+     * @return 0 if the request may run, otherwise the seconds until a token is available.
+     */
+    long tryAcquire(String client) {
+        return tryAcquire(client, System.nanoTime());
+    }
+
+    /**
+     * Takes a token for a client at a given time.
+     * @param client identifies the client, i.e. its address.
+     * @param now the current time in nanoseconds.
+     * @return 0 if the request may run, otherwise the seconds until a token is available.
+     */
+    long tryAcquire(String client, long now) {
+        // Spread the hash so similar addresses land on different stripes.
+        int hash = client.hashCode();
+        hash ^= hash >>> 16;
+        return stripes[hash & (STRIPES - 1)].tryTake(client, now);
+    }
+
+    /**
+     * The buckets of the clients hashed to one stripe, least recently seen first.
+     */
+    private final class Stripe extends LinkedHashMap<String, Bucket> {
+
+        /**
+         * The constructor of this class, orders the clients by when they were last seen.
+         */
+        private Stripe() {
+            super(16, 0.75f, true);
+        }
+
+        /**
+         * Takes a token from a client's bucket, creating a full bucket for a new client.
+         * @param client identifies the client.
+         * @param now the current time in nanoseconds.
+         * @return 0 if a token was taken, otherwise the seconds until one is available.
+         */
+        private synchronized long tryTake(String client, long now) {
+            // Forget clients idle long enough to have a full bucket again, they would get a full one anyway.
+            Iterator<Bucket> idle = values().iterator();
+            while (idle.hasNext() && now - idle.next().refilledAt >= fullAfterNanos) {
+                idle.remove();
+            }
+
+            Bucket bucket = get(client);
+            if (bucket == null) {
+                bucket = new Bucket(burst, now);
+                put(client, bucket);
+            }
+            return bucket.tryTake(now);
+        }
+
+        /**
+         * Forgets the least recently seen client once the stripe is full.
+         * @param eldest the least recently seen client.
+         * @return true if the stripe holds too many clients.
+         */
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Bucket> eldest) {
+            return size() > maxClientsPerStripe;
+        }
+    }
+
+    /**
+     * A token bucket for one client, guarded by its stripe.
+     */
+    private final class Bucket {
+
+        /**
+         * The tokens currently in the bucket.
+         */
+        private double tokens;
+
+        /**
+         * When the bucket was last refilled.
+         */
+        private long refilledAt;
+
+        /**
+         * The constructor of this class.
+         * @param tokens the starting number of tokens.
+         * @param now the current time in nanoseconds.
+         */
+        private Bucket(double tokens, long now) {
+            this.tokens = tokens;
+            this.refilledAt = now;
+        }
+
+        /**
+         * Refills the bucket and takes a token if there is one.
+         * @param now the current time in nanoseconds.
+         * @return 0 if a token was taken, otherwise the seconds until one is available.
+         */
+        private long tryTake(long now) {
+            tokens = Math.min(burst, tokens + (now - refilledAt) / 1e9 * tokensPerSecond);
+            refilledAt = now;
+            if (tokens >= 1) {
+                tokens--;
+                return 0;
+            }
+            return Math.max(1, (long) Math.ceil((1 - tokens) / tokensPerSecond));
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.example.cscserver.api;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits how many requests of one class run at once. The limit follows the
+ * gradient between this class's long-term and recent latency, so it only shrinks
+ * when requests get slower than they usually are, not when they are slow by
+ * nature. Requests that would wait longer than the maximum queue time are shed.
+ * @author Karl Clifford
+ * @version 1.0.0
+ */
+final class ConcurrencyLimiter {
+
+    /**
+     * How quickly the recent latency follows new requests, about the last 10 requests.
+     */
+    private static final double SHORT_SMOOTHING = 2.0 / 11;
+
+    /**
+     * How quickly the long-term latency follows new requests, about the last 600 requests.
+     */
+    private static final double LONG_SMOOTHING = 2.0 / 601;
+
+    /**
+     * How far the limit moves towards its new value after each request.
+     */
+    private static final double LIMIT_SMOOTHING = 0.2;
+
+    /**
+     * The most the limit can shrink by after one request.
+     */
+    private static final double MIN_GRADIENT = 0.5;
+
+    /**
+     * The limit never drops below this.
+     */
+    private final int minLimit;
+
+    /**
+     * The limit never grows above this.
+     */
+    private final int maxLimit;
+
+    /**
+     * The longest a request may wait for a slot before it is shed.
+     */
+    private final long maxQueueNanos;
+
+    /**
+     * How many times slower than usual requests can get before the limit shrinks.
+     */
+    private final double tolerance;
+
+    /**
+     * Guards the limit and the number of running requests.
+     */
+    private final ReentrantLock lock = new ReentrantLock(true);
+
+    /**
+     * Signalled when a slot frees up.
+     */
+    private final Condition slotFree = lock.newCondition();
+
+    /**
+     * The current limit, fractional so it can grow by less than one per request.
+     */
+    private double limit;
+
+    /**
+     * The number of requests currently running.
+     */
+    private int inFlight = 0;
+
+    /**
+     * The average latency of recent requests, 0 until the first request finishes.
+     */
+    private double shortLatencyNanos = 0;
+
+    /**
+     * The average latency over a much longer window, what this class of request usually takes.
+     */
+    private double longLatencyNanos = 0;
+
+    /**
+     * The constructor of this class.
+     * @param minLimit the smallest the limit can get.
+     * @param maxLimit the largest the limit can get, also the starting limit.
+     * @param maxQueueMillis the longest a request may wait for a slot.
+     * @param tolerance how many times slower than usual requests can get before the limit shrinks.
+     */
+    ConcurrencyLimiter(int minLimit, int maxLimit, long maxQueueMillis, double tolerance) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.maxQueueNanos = TimeUnit.MILLISECONDS.toNanos(maxQueueMillis);
+        this.tolerance = tolerance;
+        this.limit = maxLimit;
+    }
+
+    /**
+     * Waits for a slot, up to the maximum queue time.
+     * @return true if the request may run, false if it should be shed.
+     * @throws InterruptedException if the request is cancelled while waiting.
+     */
+    boolean acquire() throws InterruptedException {
+        lock.lock();
+        try {
+            long remaining = maxQueueNanos;
+            while (inFlight >= (int) limit) {
+                if (remaining <= 0) {
+                    // Waited too long, shed the request.
+                    return false;
+                }
+                remaining = slotFree.awaitNanos(remaining);
+            }
+            inFlight++;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Frees a slot and adjusts the limit.
+     * @param latencyNanos how long the request took to run.
+     */
+    void release(long latencyNanos) {
+        lock.lock();
+        try {
+            int running = inFlight--;
+            // Never let a latency be 0, the gradient divides by it.
+            long sample = Math.max(1, latencyNanos);
+            if (longLatencyNanos == 0) {
+                shortLatencyNanos = sample;
+                longLatencyNanos = sample;
+            } else {
+                shortLatencyNanos += (sample - shortLatencyNanos) * SHORT_SMOOTHING;
+                longLatencyNanos += (sample - longLatencyNanos) * LONG_SMOOTHING;
+            }
+            if (longLatencyNanos > 2 * shortLatencyNanos) {
+                // Requests have got much faster, let the long-term latency catch up sooner.
+                longLatencyNanos *= 0.95;
+            }
+
+            // Only adapt while the limit is being used, idle slots say nothing about the server.
+            if (running >= limit / 2) {
+                // 1 while requests are as fast as usual, down to MIN_GRADIENT as they slow down.
+                double gradient = Math.max(MIN_GRADIENT,
+                        Math.min(1.0, tolerance * longLatencyNanos / shortLatencyNanos));
+                // Leave room for a few queued requests so the limit can grow.
+                double target = limit * gradient + Math.sqrt(limit);
+                limit = Math.max(minLimit, Math.min(maxLimit,
+                        limit * (1 - LIMIT_SMOOTHING) + target * LIMIT_SMOOTHING));
+            }
+            slotFree.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the current limit.
+     * @return the number of requests allowed to run at once.
+     */
+    int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.cscserver.api;
+
+import com.example.cscserver.Model.ErrorMessage;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+
+/**
+ * Starts, stops and downloads Java Flight Recorder recordings of the running server.
+ * Only available when csc.profiling.admin-enabled is true, otherwise every endpoint
+ * answers 404. The property is checked at run time so it can still be changed
+ * after an ahead-of-time processed build.
+ * @author Karl Clifford
+ * @version 1.0.0
+ */
+@RestController
+@RequestMapping("/admin/jfr")
+public class ProfilingController {
+
+    /**
+     * Handles server logs.
+     */
+    private static final Logger LOG =
+            LoggerFactory.getLogger(ProfilingController.class);
+
+    /**
+     * Whether recordings can be controlled over HTTP.
+     */
+    private final boolean enabled;
+
+    /**
+     * The latest recording, null if none has been started.
+     */
+    private Recording recording;
+
+    /**
+     * The constructor of this class.
+     * @param enabled whether recordings can be controlled over HTTP.
+     */
+    public ProfilingController(@Value("${csc.profiling.admin-enabled:false}") boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Starts a new recording, including the server's custom events.
+     * @param settings (optional) the JDK settings to use, default or profile.
+     * @param maxAgeSeconds (optional) how many seconds of data to keep, 0 to keep everything.
+     * @return response code 204 if started, 400 if the settings don't exist, 404 if the admin endpoints are off
+     * or 409 if a recording is running.
+     */
+    @PostMapping("/start")
+    public synchronized ResponseEntity<?> start(
+            @RequestParam(value = "settings", defaultValue = "default") String settings,
+            @RequestParam(value = "maxAgeSeconds", defaultValue = "0") long maxAgeSeconds) {
+        if (!enabled) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        if (recording != null && recording.getState() == RecordingState.RUNNING) {
+            ErrorMessage error = new ErrorMessage(HttpStatus.CONFLICT.value(), "a recording is already running");
+            return new ResponseEntity<>(error.toJson(), HttpStatus.CONFLICT);
+        }
+
+        Configuration configuration;
+        try {
+            configuration = Configuration.getConfiguration(settings);
+        } catch (IOException | ParseException e) {
+            ErrorMessage error = new ErrorMessage(HttpStatus.BAD_REQUEST.value(), "settings must be default or profile");
+            return new ResponseEntity<>(error.toJson(), HttpStatus.BAD_REQUEST);
+        }
+
+        // Throw away the previous recording.
+        if (recording != null) {
+            recording.close();
+        }
+        recording = new Recording(configuration);
+        recording.setName("cscserver");
+        if (maxAgeSeconds > 0) {
+            recording.setMaxAge(Duration.ofSeconds(maxAgeSeconds));
+        }
+        recording.start();
+        LOG.info("Started flight recording with " + settings + " settings");
+        return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+    }
+
+    /**
+     * Stops the running recording, it can still be downloaded afterwards.
+     * @return response code 204 if stopped or 404 if no recording is running or the admin endpoints are off.
+     */
+    @PostMapping("/stop")
+    public synchronized ResponseEntity<?> stop() {
+        if (!enabled || recording == null || recording.getState() != RecordingState.RUNNING) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        recording.stop();
+        LOG.info("Stopped flight recording");
+        return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+    }
+
+    /**
+     * Downloads the latest recording, a running recording keeps running.
+     * @return response code 200 with the .jfr file, 404 if there is no recording or the admin endpoints are off
+     * or 500 if it can't be written.
+     */
+    @GetMapping("/dump")
+    public synchronized ResponseEntity<?> dump() {
+        if (!enabled || recording == null || recording.getState() == RecordingState.NEW) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+
+        Path file;
+        try {
+            file = Files.createTempFile("cscserver", ".jfr");
+            recording.dump(file);
+        } catch (IOException e) {
+            LOG.error("Error dumping flight recording: " + e);
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.CONTENT_TYPE, "application/octet-stream");
+        headers.set(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"cscserver.jfr\"");
+        StreamingResponseBody body = out -> {
+            try {
+                Files.copy(file, out);
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        };
+        return new ResponseEntity<>(body, headers, HttpStatus.OK);
+    }
+}
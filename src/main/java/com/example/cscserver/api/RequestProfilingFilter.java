@@ -0,0 +1,63 @@
+package com.example.cscserver.api;
+
+import com.example.cscserver.profiling.ApiRequestEvent;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Records an ApiRequestEvent for every API request while a flight recording is running.
+ * Runs before admission control so the time spent waiting to be admitted is included.
+ * @author Karl Clifford
+ * @version 1.0.0
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+public class RequestProfilingFilter extends OncePerRequestFilter {
+
+    /**
+     * Only API requests are recorded.
+     * @param request the request.
+     * @return true if the request isn't for the API.
+     */
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getRequestURI().startsWith("/api/");
+    }
+
+    /**
+     * Times the request if a recording wants API request events.
+     * @param request the request.
+     * @param response the response.
+     * @param chain the rest of the filters.
+     * @throws ServletException if a later filter fails.
+     * @throws IOException if the response can't be written.
+     */
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        ApiRequestEvent event = new ApiRequestEvent();
+        if (!event.isEnabled()) {
+            // No recording is running, don't pay for the event.
+            chain.doFilter(request, response);
+            return;
+        }
+
+        event.begin();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            event.method = request.getMethod();
+            event.path = request.getRequestURI();
+            event.status = response.getStatus();
+            event.commit();
+        }
+    }
+}
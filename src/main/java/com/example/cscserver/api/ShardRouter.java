@@ -0,0 +1,434 @@
+package com.example.cscserver.api;
+
+import com.example.cscserver.Data.DataService;
+import com.example.cscserver.Model.City;
+import com.example.cscserver.Model.ErrorMessage;
+import com.example.cscserver.configuration.CityComparator;
+import com.example.cscserver.configuration.CityWrapper;
+import com.example.cscserver.configuration.WireFormat;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import jakarta.servlet.http.HttpServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.UnknownHostException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Splits the countries between several servers. Each country belongs to one node,
+ * picked by hashing its name. Requests for a country are forwarded to the node
+ * that owns it and requests for every city are sent to all nodes, with their
+ * date sorted results merged into one list.
+ * @author Karl Clifford
+ * @version 1.0.0
+ */
+@Component
+public class ShardRouter {
+
+    /**
+     * Marks requests sent between nodes, these are answered from local data if they come from a node.
+     */
+    public static final String LOCAL_HEADER = "X-Csc-Shard-Local";
+
+    /**
+     * Handles server logs.
+     */
+    private static final Logger LOG =
+            LoggerFactory.getLogger(ShardRouter.class);
+
+    /**
+     * Reads the results of other nodes.
+     */
+    private static final Gson GSON = new Gson();
+
+    /**
+     * The base URL of every node, in the same order on every node. Empty if sharding is off.
+     */
+    private final List<String> nodes;
+
+    /**
+     * The index of this node in the list of nodes.
+     */
+    private final int self;
+
+    /**
+     * The addresses of every node, only requests from these are trusted to carry the local header.
+     */
+    private final Set<InetAddress> nodeAddresses;
+
+    /**
+     * How long to wait for another node to answer.
+     */
+    private final Duration timeout;
+
+    /**
+     * This node's data.
+     */
+    private final DataService data;
+
+    /**
+     * Sends requests to the other nodes.
+     */
+    private final HttpClient client;
+
+    /**
+     * Counts requests forwarded to the node that owns the country.
+     */
+    private final Counter forwarded = Metrics.counter("csc.shard.requests", "kind", "forward");
+
+    /**
+     * Counts requests sent to every node.
+     */
+    private final Counter gathered = Metrics.counter("csc.shard.requests", "kind", "scatter");
+
+    /**
+     * Counts requests that failed because another node didn't answer.
+     */
+    private final Counter failures = Metrics.counter("csc.shard.failures");
+
+    /**
+     * The constructor of this class.
+     * @param nodes the comma separated base URLs of every node, blank to turn sharding off.
+     * @param self the index of this node in the list of nodes.
+     * @param timeoutMillis how long to wait for another node to answer.
+     * @param data this node's data.
+     */
+    public ShardRouter(@Value("${csc.shard.nodes:}") String nodes,
+                       @Value("${csc.shard.self:0}") int self,
+                       @Value("${csc.shard.timeout-millis:2000}") long timeoutMillis,
+                       DataService data) {
+        this.nodes = nodes.isBlank() ? List.of() : Arrays.stream(nodes.split(","))
+                .map(String::trim)
+                .map(node -> node.endsWith("/") ? node.substring(0, node.length() - 1) : node)
+                .toList();
+        if (!this.nodes.isEmpty() && (self < 0 || self >= this.nodes.size())) {
+            throw new IllegalArgumentException("csc.shard.self must be between 0 and " + (this.nodes.size() - 1));
+        }
+        this.self = self;
+        this.nodeAddresses = resolve(this.nodes);
+        this.timeout = Duration.ofMillis(timeoutMillis);
+        this.data = data;
+        this.client = HttpClient.newBuilder().connectTimeout(timeout).build();
+        if (isEnabled()) {
+            LOG.info("Shard " + self + " of " + this.nodes.size() + ": " + this.nodes);
+        }
+    }
+
+    /**
+     * Checks if the countries are split between several nodes.
+     * @return true if sharding is on.
+     */
+    public boolean isEnabled() {
+        return nodes.size() > 1;
+    }
+
+    /**
+     * Checks if a request has to be sent to another node.
+     * @param request the request.
+     * @param country the country the request is for, null if it is for every country.
+     * @return true if another node has to answer the request.
+     */
+    public boolean isRemote(HttpServletRequest request, String country) {
+        if (!isEnabled() || isFromNode(request)) {
+            // Sharding is off or another node has already routed this request.
+            return false;
+        }
+        return country == null || owner(country) != self;
+    }
+
+    /**
+     * Checks if a request was routed here by another node. The local header is only
+     * trusted from the configured nodes, so clients can't use it to skip routing or rate limits.
+     * @param request the request.
+     * @return true if sharding is on and the request carries the local header and came from a node.
+     */
+    public boolean isFromNode(HttpServletRequest request) {
+        if (!isEnabled() || request.getHeader(LOCAL_HEADER) == null) {
+            return false;
+        }
+        try {
+            // The remote address is always an IP literal, so this doesn't do a DNS lookup.
+            return nodeAddresses.contains(InetAddress.getByName(request.getRemoteAddr()));
+        } catch (UnknownHostException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Sends a request to the node that owns its country and returns that node's response.
+     * @param request the request.
+     * @param country the country the request is for.
+     * @param body the JSON body to send, null if there isn't one.
+     * @return the owning node's response or 502 if it didn't answer.
+     */
+    public ResponseEntity<?> forward(HttpServletRequest request, String country, String body) {
+        String node = nodes.get(owner(country));
+        String query = request.getQueryString();
+        HttpRequest.Builder forwardRequest = HttpRequest.newBuilder()
+                .uri(URI.create(node + request.getRequestURI() + (query == null ? "" : "?" + query)))
+                .timeout(timeout)
+                .header(LOCAL_HEADER, "true")
+                .method(request.getMethod(), body == null
+                        ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofString(body));
+        if (body != null) {
+            forwardRequest.header(HttpHeaders.CONTENT_TYPE, "application/json");
+        }
+        if (request.getHeader(HttpHeaders.ACCEPT) != null) {
+            forwardRequest.header(HttpHeaders.ACCEPT, request.getHeader(HttpHeaders.ACCEPT));
+        }
+        forwarded.increment();
+
+        try {
+            HttpResponse<byte[]> response = client.send(forwardRequest.build(), HttpResponse.BodyHandlers.ofByteArray());
+            // Pass the owning node's answer straight back.
+            HttpHeaders headers = new HttpHeaders();
+            response.headers().firstValue(HttpHeaders.CONTENT_TYPE)
+                    .ifPresent(value -> headers.set(HttpHeaders.CONTENT_TYPE, value));
+            response.headers().firstValue(HttpHeaders.VARY)
+                    .ifPresent(value -> headers.set(HttpHeaders.VARY, value));
+            response.headers().firstValue(HttpHeaders.RETRY_AFTER)
+                    .ifPresent(value -> headers.set(HttpHeaders.RETRY_AFTER, value));
+            response.headers().firstValue(DataService.SEQUENCE_HEADER)
+                    .ifPresent(value -> headers.set(DataService.SEQUENCE_HEADER, value));
+            return ResponseEntity.status(response.statusCode())
+                    .headers(headers)
+                    .body(response.body().length == 0 ? null : response.body());
+        } catch (IOException e) {
+            return unavailable(node, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return unavailable(node, e);
+        }
+    }
+
+    /**
+     * Gets every city from every node, merged into one date sorted list.
+     * This node must already have caught up to minSequence.
+     * @param date (optional) maximum date to filter the cities by.
+     * @param minSequence (optional) the X-Csc-Sequence every node must have caught up to.
+     * @param format the format to send the cities in.
+     * @return response code 200 with the cities, 404 if no cities exist, 502 if a node didn't answer
+     * or 503 if a node hasn't caught up to minSequence.
+     */
+    public ResponseEntity<?> gather(String date, Long minSequence, WireFormat format) {
+        gathered.increment();
+        ArrayList<String> parameters = new ArrayList<>();
+        if (date != null) {
+            parameters.add("dateFounded=" + URLEncoder.encode(date, StandardCharsets.UTF_8));
+        }
+        if (minSequence != null) {
+            parameters.add("minSequence=" + minSequence);
+        }
+        String query = parameters.isEmpty() ? "" : "?" + String.join("&", parameters);
+
+        // Ask every other node at once, the nodes answer in parallel.
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (int i = 0; i < nodes.size(); i++) {
+            if (i == self) {
+                responses.add(null);
+                continue;
+            }
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(URI.create(nodes.get(i) + "/api/v1/city" + query))
+                    .timeout(timeout)
+                    .header(LOCAL_HEADER, "true")
+                    .header(HttpHeaders.ACCEPT, "application/json")
+                    .GET()
+                    .build();
+            responses.add(client.sendAsync(request, HttpResponse.BodyHandlers.ofString()));
+        }
+
+        // Each node sends its cities sorted by date.
+        List<List<City>> shards = new ArrayList<>();
+        for (int i = 0; i < nodes.size(); i++) {
+            String node = nodes.get(i);
+            try {
+                if (i == self) {
+                    ResponseEntity<?> local = data.getCities(null, null, date, WireFormat.JSON).get();
+                    shards.add(local.getStatusCode() == HttpStatus.OK ? parse(local.getBody().toString()) : List.of());
+                    continue;
+                }
+                HttpResponse<String> response = responses.get(i).get();
+                if (response.statusCode() == HttpStatus.OK.value()) {
+                    shards.add(parse(response.body()));
+                } else if (response.statusCode() == HttpStatus.NOT_FOUND.value()) {
+                    // This node has no cities.
+                    shards.add(List.of());
+                } else if (response.statusCode() == HttpStatus.SERVICE_UNAVAILABLE.value()) {
+                    // This node hasn't caught up or is too busy, the client should retry.
+                    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                            .header(HttpHeaders.RETRY_AFTER, response.headers().firstValue(HttpHeaders.RETRY_AFTER)
+                                    .orElse("1"))
+                            .body(response.body());
+                } else {
+                    return unavailable(node, new IOException("status " + response.statusCode()));
+                }
+            } catch (ExecutionException | JsonParseException e) {
+                return unavailable(node, e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return unavailable(node, e);
+            }
+        }
+
+        ArrayList<City> cities = merge(shards);
+        if (cities.isEmpty()) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        return ResponseEntity.ok()
+                .contentType(format.getMediaType())
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT)
+                .body(format.encode(new CityWrapper(cities)));
+    }
+
+    /**
+     * Looks up the addresses of every node.
+     * @param nodes the base URL of every node.
+     * @return every address the nodes' host names resolve to.
+     */
+    private static Set<InetAddress> resolve(List<String> nodes) {
+        HashSet<InetAddress> addresses = new HashSet<>();
+        for (String node : nodes) {
+            String host = URI.create(node).getHost();
+            try {
+                addresses.addAll(Arrays.asList(InetAddress.getAllByName(host)));
+            } catch (UnknownHostException e) {
+                LOG.warn("Can't resolve shard " + node + ", requests from it will be treated as clients: " + e);
+            }
+        }
+        return Set.copyOf(addresses);
+    }
+
+    /**
+     * Works out which node owns a country, every node gets the same answer.
+     * @param country the country.
+     * @return the index of the owning node.
+     */
+    private int owner(String country) {
+        return Math.floorMod(country.hashCode(), nodes.size());
+    }
+
+    /**
+     * Merges lists of cities that are each sorted by date into one sorted list.
+     * @param shards the sorted cities from each node.
+     * @return every city sorted by date.
+     */
+    private static ArrayList<City> merge(List<List<City>> shards) {
+        CityComparator byDate = new CityComparator();
+        // Holds the position reached in each list, ordered by the city at that position.
+        PriorityQueue<int[]> heads = new PriorityQueue<>(
+                Comparator.comparing((int[] head) -> shards.get(head[0]).get(head[1]), byDate));
+        int total = 0;
+        for (int i = 0; i < shards.size(); i++) {
+            if (!shards.get(i).isEmpty()) {
+                heads.add(new int[] {i, 0});
+            }
+            total += shards.get(i).size();
+        }
+
+        ArrayList<City> cities = new ArrayList<>(total);
+        while (!heads.isEmpty()) {
+            int[] head = heads.poll();
+            List<City> shard = shards.get(head[0]);
+            cities.add(shard.get(head[1]));
+            // Move along this list.
+            if (++head[1] < shard.size()) {
+                heads.add(head);
+            }
+        }
+        return cities;
+    }
+
+    /**
+     * Reads the cities in a JSON response.
+     * @param json the response body.
+     * @return the cities in the order they were sent.
+     */
+    private static List<City> parse(String json) {
+        ShardPage page = GSON.fromJson(json, ShardPage.class);
+        ArrayList<City> cities = new ArrayList<>();
+        if (page != null && page.cities != null) {
+            for (ShardCity city : page.cities) {
+                // Use the constructor so the date is parsed for sorting.
+                cities.add(new City(city.name, city.state, city.country, city.foundingDate));
+            }
+        }
+        return cities;
+    }
+
+    /**
+     * Builds the response sent when another node didn't answer.
+     * @param node the node that didn't answer.
+     * @param cause why it didn't answer.
+     * @return 502 error response.
+     */
+    private ResponseEntity<?> unavailable(String node, Exception cause) {
+        failures.increment();
+        LOG.error("Shard " + node + " didn't answer: " + cause);
+        ErrorMessage error = new ErrorMessage(HttpStatus.BAD_GATEWAY.value(), "Shard " + node + " is unavailable");
+        return new ResponseEntity<>(error.toJson(), HttpStatus.BAD_GATEWAY);
+    }
+
+    /**
+     * The body of a response from another node.
+     */
+    private static final class ShardPage {
+
+        /**
+         * The cities sent by the node.
+         */
+        private List<ShardCity> cities;
+    }
+
+    /**
+     * A city as sent by another node.
+     */
+    private static final class ShardCity {
+
+        /**
+         * The name of the city.
+         */
+        private String name;
+
+        /**
+         * The state the city is situated in.
+         */
+        private String state;
+
+        /**
+         * The country the state is situated in.
+         */
+        private String country;
+
+        /**
+         * The date the city was founded.
+         */
+        private String foundingDate;
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.cscserver.configuration;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.google.gson.Gson;
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+import org.springframework.http.MediaType;
+
+import java.io.UncheckedIOException;
+
+/**
+ * The formats city data can be sent in, chosen from the request's Accept header.
+ * The binary formats produce the same shape as the JSON output.
+ * @author Karl Clifford
+ * @version 1.0.0
+ */
+public enum WireFormat {
+    /**
+     * JSON produced by Gson, the default.
+     */
+    JSON("application/json", null),
+    /**
+     * Concise Binary Object Representation (RFC 8949).
+     */
+    CBOR("application/cbor", new CBORFactory()),
+    /**
+     * Jackson's binary JSON format.
+     */
+    SMILE("application/x-jackson-smile", new SmileFactory()),
+    /**
+     * MessagePack.
+     */
+    MESSAGE_PACK("application/x-msgpack", new MessagePackFactory());
+
+    /**
+     * The media type sent in the Content-Type header.
+     */
+    private final MediaType mediaType;
+
+    /**
+     * Encodes the binary formats, null for JSON.
+     */
+    private final ObjectMapper mapper;
+
+    /**
+     * The constructor of this enum.
+     * @param mediaType the media type of the format.
+     * @param factory the Jackson factory for binary formats, null for JSON.
+     */
+    WireFormat(String mediaType, JsonFactory factory) {
+        this.mediaType = MediaType.parseMediaType(mediaType);
+        if (factory == null) {
+            this.mapper = null;
+        } else {
+            // Serialise fields like Gson does, so every format has the same shape.
+            this.mapper = new ObjectMapper(factory);
+            this.mapper.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.NONE);
+            this.mapper.setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY);
+        }
+    }
+
+    /**
+     * Gets the media type of this format.
+     * @return the media type.
+     */
+    public MediaType getMediaType() {
+        return mediaType;
+    }
+
+    /**
+     * Encodes cities in this format.
+     * @param cities the cities to encode.
+     * @return a JSON string or the binary encoding.
+     */
+    public Object encode(CityWrapper cities) {
+        if (mapper == null) {
+            Gson gson = new Gson();
+            return gson.toJson(cities);
+        }
+
+        try {
+            return mapper.writeValueAsBytes(cities);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Picks the format with the highest quality in an Accept header.
+     * @param accept the Accept header, may be null.
+     * @return the preferred format, JSON if none are requested.
+     */
+    public static WireFormat fromAccept(String accept) {
+        if (accept == null || accept.isBlank()) {
+            return JSON;
+        }
+
+        WireFormat best = JSON;
+        double bestQuality = 0;
+        for (MediaType requested : MediaType.parseMediaTypes(accept)) {
+            for (WireFormat format : values()) {
+                // Earlier entries win ties, so wildcards resolve to JSON.
+                if (requested.getQualityValue() > bestQuality && requested.includes(format.mediaType)) {
+                    best = format;
+                    bestQuality = requested.getQualityValue();
+                }
+            }
+        }
+        return best;
+    }
+}
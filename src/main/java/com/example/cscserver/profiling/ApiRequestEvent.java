@@ -0,0 +1,37 @@
+package com.example.cscserver.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Recorded for every API request, covering the whole time spent handling it.
+ * @author Karl Clifford
+ * @version 1.0.0
+ */
+@Name("com.example.cscserver.ApiRequest")
+@Label("API Request")
+@Category({"CSC", "API"})
+@Description("An API request from arrival to response")
+public final class ApiRequestEvent extends Event {
+
+    /**
+     * The HTTP method.
+     */
+    @Label("Method")
+    public String method;
+
+    /**
+     * The request path.
+     */
+    @Label("Path")
+    public String path;
+
+    /**
+     * The response status code.
+     */
+    @Label("Status")
+    public int status;
+}
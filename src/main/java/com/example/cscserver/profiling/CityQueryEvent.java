@@ -0,0 +1,66 @@
+package com.example.cscserver.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Recorded for each city query computed by the DataService, coalesced callers aren't recorded.
+ * @author Karl Clifford
+ * @version 1.0.0
+ */
+@Name("com.example.cscserver.CityQuery")
+@Label("City Query")
+@Category({"CSC", "Data"})
+@Description("Collecting, sorting and encoding the cities for a GET request")
+public final class CityQueryEvent extends Event {
+
+    /**
+     * The country filter, null for every country.
+     */
+    @Label("Country")
+    public String country;
+
+    /**
+     * The state filter, null for every state.
+     */
+    @Label("State")
+    public String state;
+
+    /**
+     * The wire format the cities were encoded in.
+     */
+    @Label("Format")
+    public String format;
+
+    /**
+     * The number of cities collected before date filtering.
+     */
+    @Label("Scope Size")
+    public int scopeSize;
+
+    /**
+     * The time spent collecting the cities into the priority queue and sorting them by date.
+     */
+    @Label("Sort Time")
+    @Timespan(Timespan.NANOSECONDS)
+    public long sortTime;
+
+    /**
+     * The time spent encoding the cities.
+     */
+    @Label("Serialization Time")
+    @Timespan(Timespan.NANOSECONDS)
+    public long serializationTime;
+
+    /**
+     * The size of the encoded response body in bytes, JSON is counted as UTF-8.
+     */
+    @Label("Serialized Size")
+    @DataAmount
+    public long serializedBytes;
+}
@@ -0,0 +1,25 @@
+package com.example.cscserver.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Recorded when a request thread has to wait for space in the mutation queue.
+ * @author Karl Clifford
+ * @version 1.0.0
+ */
+@Name("com.example.cscserver.QueueWait")
+@Label("Mutation Queue Wait")
+@Category({"CSC", "Data"})
+@Description("A request thread waited for the writer thread to free space in the mutation queue")
+public final class QueueWaitEvent extends Event {
+
+    /**
+     * The kind of change that was waiting.
+     */
+    @Label("Mutation")
+    public String mutation;
+}
@@ -0,0 +1,31 @@
+package com.example.cscserver.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Recorded each time the writer thread applies a batch and publishes a snapshot.
+ * @author Karl Clifford
+ * @version 1.0.0
+ */
+@Name("com.example.cscserver.WriterBatch")
+@Label("Writer Batch")
+@Category({"CSC", "Data"})
+@Description("The writer thread applied a batch of mutations and published a new snapshot")
+public final class WriterBatchEvent extends Event {
+
+    /**
+     * The number of mutations in the batch.
+     */
+    @Label("Batch Size")
+    public int batchSize;
+
+    /**
+     * The version of the published snapshot.
+     */
+    @Label("Snapshot Version")
+    public long version;
+}
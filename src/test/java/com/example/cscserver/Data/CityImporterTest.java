@@ -0,0 +1,258 @@
+package com.example.cscserver.Data;
+
+import com.example.cscserver.Model.BasicCity;
+import com.example.cscserver.Model.City;
+import com.example.cscserver.Model.ImportResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks CityImporter parses and validates CSV and NDJSON records, and that files
+ * written by CityExporter are read back unchanged.
+ * @author Karl Clifford
+ * @version 1.0.0
+ */
+class CityImporterTest {
+
+    /**
+     * Holds the exported files.
+     */
+    @TempDir
+    Path directory;
+
+    /**
+     * The cities are exported from here.
+     */
+    private DataService source;
+
+    /**
+     * The cities are imported into here.
+     */
+    private DataService target;
+
+    /**
+     * Starts with two empty services.
+     */
+    @BeforeEach
+    void createServices() {
+        source = new DataService();
+        target = new DataService();
+    }
+
+    /**
+     * Stops the writer threads.
+     */
+    @AfterEach
+    void stopServices() {
+        source.shutdown();
+        target.shutdown();
+    }
+
+    /**
+     * The header row is skipped, quoted fields keep their commas and doubled quotes and Windows line endings are trimmed.
+     * @throws Exception if the import fails.
+     */
+    @Test
+    void csvParsesHeaderQuotesAndLineEndings() throws Exception {
+        ImportResult result = importText(CityImporter.Format.CSV,
+                "name,state,country,foundingDate\r\n"
+                + "Plain,State,Country,1900-01-01\r\n"
+                + "\"Comma, Town\",\"Say \"\"Hi\"\"\",Country,1901-01-01\n"
+                + "\n"
+                + "No Newline At End,State,Country,1902-01-01");
+
+        assertEquals(3, result.getRowsRead());
+        assertEquals(0, result.getRowsRejected());
+        assertEquals(Set.of("Plain|State|Country|1900-01-01",
+                "Comma, Town|Say \"Hi\"|Country|1901-01-01",
+                "No Newline At End|State|Country|1902-01-01"), cities(target));
+    }
+
+    /**
+     * Records are validated like cities added through the API, invalid ones are counted and skipped.
+     * @throws Exception if the import fails.
+     */
+    @Test
+    void csvRejectsInvalidRecords() throws Exception {
+        ImportResult result = importText(CityImporter.Format.CSV,
+                "Valid,State,Country,1900-01-01\n"
+                + "Too,Few,Fields\n"
+                + "Too,Many,Fields,1900-01-01,Extra\n"
+                + " ,State,Country,1900-01-01\n"
+                + "Bad Date,State,Country,01/01/1900\n"
+                + "Not A Day,State,Country,1900-02-30\n"
+                + "Future,State,Country,2999-01-01\n"
+                + "\"Unterminated,State,Country,1900-01-01\n");
+
+        assertEquals(8, result.getRowsRead());
+        assertEquals(7, result.getRowsRejected());
+        assertEquals(Set.of("Valid|State|Country|1900-01-01"), cities(target));
+    }
+
+    /**
+     * Only the first line of a file can be a header, later rows starting with "name," are cities.
+     * @throws Exception if the import fails.
+     */
+    @Test
+    void csvOnlySkipsHeaderOnFirstLine() throws Exception {
+        ImportResult result = importText(CityImporter.Format.CSV,
+                "Plain,State,Country,1900-01-01\n"
+                + "name,state,country,1901-01-01\n");
+
+        assertEquals(2, result.getRowsRead());
+        assertEquals(2, result.getRowsStored());
+    }
+
+    /**
+     * Cities that already exist are read but not stored again.
+     * @throws Exception if the import fails.
+     */
+    @Test
+    void csvSkipsDuplicates() throws Exception {
+        ImportResult result = importText(CityImporter.Format.CSV,
+                "Twice,State,Country,1900-01-01\n"
+                + "Twice,State,Country,1900-01-01\n");
+
+        assertEquals(2, result.getRowsRead());
+        assertEquals(0, result.getRowsRejected());
+        assertEquals(1, result.getRowsStored());
+    }
+
+    /**
+     * NDJSON records are validated the same way, malformed JSON is rejected.
+     * @throws Exception if the import fails.
+     */
+    @Test
+    void ndjsonParsesAndRejectsRecords() throws Exception {
+        ImportResult result = importText(CityImporter.Format.NDJSON,
+                "{\"name\":\"Valid\",\"state\":\"State\",\"country\":\"Country\",\"foundingDate\":\"1900-01-01\"}\n"
+                + "{\"name\":\"No Date\",\"state\":\"State\",\"country\":\"Country\"}\n"
+                + "{not json\n");
+
+        assertEquals(3, result.getRowsRead());
+        assertEquals(2, result.getRowsRejected());
+        assertEquals(Set.of("Valid|State|Country|1900-01-01"), cities(target));
+    }
+
+    /**
+     * Fields with line breaks, commas and quotes are quoted on export and must come back as one record.
+     * @throws Exception if the export or import fails.
+     */
+    @Test
+    void csvExportRoundTripsFieldsWithLineBreaks() throws Exception {
+        store(new City("Plain", "State", "Country", "1900-01-01"));
+        store(new City("Two\nLines", "State", "Country", "1901-01-01"));
+        store(new City("Windows\r\nLines", "Quoted \"State\"", "Country", "1902-01-01"));
+        store(new City("Comma, Town", "State", "Other, Country", "1903-01-01"));
+
+        ImportResult result = exportAndImport(CityImporter.Format.CSV);
+
+        assertEquals(4, result.getRowsStored());
+        assertEquals(cities(source), cities(target));
+    }
+
+    /**
+     * A quoted line break must not split a record between two parallel parsed chunks.
+     * @throws Exception if the export or import fails.
+     */
+    @Test
+    void csvRecordsSpanningChunksAreReadWhole() throws Exception {
+        // Enough multi-line records to fill several 16MB chunks.
+        String padding = "x".repeat(1000);
+        ArrayList<City> cities = new ArrayList<>();
+        for (int i = 0; i < 40_000; i++) {
+            cities.add(new City("City " + i + "\n" + padding, "State", "Country" + (i % 10), "1900-01-01"));
+        }
+        source.storeCities(cities).get();
+
+        ImportResult result = exportAndImport(CityImporter.Format.CSV);
+
+        assertEquals(40_000, result.getRowsStored());
+        assertEquals(cities(source), cities(target));
+    }
+
+    /**
+     * NDJSON escapes line breaks inside strings, so it round trips too.
+     * @throws Exception if the export or import fails.
+     */
+    @Test
+    void ndjsonExportRoundTrips() throws Exception {
+        store(new City("Two\nLines", "State \"Quoted\"", "Country", "1901-01-01"));
+        store(new City("Comma, Town", "State", "Country", "1903-01-01"));
+
+        ImportResult result = exportAndImport(CityImporter.Format.NDJSON);
+
+        assertEquals(2, result.getRowsStored());
+        assertEquals(cities(source), cities(target));
+    }
+
+    /**
+     * Stores a city in the source service.
+     * @param city the city.
+     * @throws Exception if the city can't be stored.
+     */
+    private void store(City city) throws Exception {
+        source.storeCity(city).get();
+    }
+
+    /**
+     * Exports the source service to a file and imports the file into the target service.
+     * @param format the file format.
+     * @return the import summary.
+     * @throws IOException if the file can't be written or read.
+     * @throws InterruptedException if the import is cancelled.
+     */
+    private ImportResult exportAndImport(CityImporter.Format format) throws IOException, InterruptedException {
+        Path file = directory.resolve("cities." + format.name().toLowerCase());
+        try (OutputStream out = Files.newOutputStream(file)) {
+            new CityExporter(source).export(out, format);
+        }
+        return new CityImporter(target, "", directory.toString(), "").importFile(file, format);
+    }
+
+    /**
+     * Writes a file and imports it into the target service.
+     * @param format the file format.
+     * @param text the contents of the file.
+     * @return the import summary.
+     * @throws IOException if the file can't be written or read.
+     * @throws InterruptedException if the import is cancelled.
+     */
+    private ImportResult importText(CityImporter.Format format, String text) throws IOException, InterruptedException {
+        Path file = directory.resolve("input." + format.name().toLowerCase());
+        Files.writeString(file, text);
+        return new CityImporter(target, "", directory.toString(), "").importFile(file, format);
+    }
+
+    /**
+     * Lists every city in a service.
+     * @param data the service.
+     * @return one entry per city with every field, sorted.
+     */
+    private static Set<String> cities(DataService data) {
+        TreeSet<String> cities = new TreeSet<>();
+        for (Map.Entry<String, Map<String, List<BasicCity>>> country : data.snapshot().getCountries().entrySet()) {
+            for (Map.Entry<String, List<BasicCity>> state : country.getValue().entrySet()) {
+                for (BasicCity city : state.getValue()) {
+                    cities.add(city.getName() + "|" + state.getKey() + "|" + country.getKey()
+                            + "|" + city.getFoundingDate());
+                }
+            }
+        }
+        return cities;
+    }
+}
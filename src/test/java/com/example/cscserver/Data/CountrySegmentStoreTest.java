@@ -0,0 +1,137 @@
+package com.example.cscserver.Data;
+
+import com.example.cscserver.Model.BasicCity;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks countries written to the segment file are read back unchanged.
+ * @author Karl Clifford
+ * @version 1.0.0
+ */
+class CountrySegmentStoreTest {
+
+    /**
+     * Holds the segment file.
+     */
+    @TempDir
+    Path directory;
+
+    /**
+     * The store being tested.
+     */
+    private CountrySegmentStore store;
+
+    /**
+     * Starts with an empty segment file.
+     * @throws IOException if the file can't be created.
+     */
+    @BeforeEach
+    void createStore() throws IOException {
+        store = new CountrySegmentStore(directory);
+    }
+
+    /**
+     * Closes the segment file.
+     * @throws IOException if the file can't be closed.
+     */
+    @AfterEach
+    void closeStore() throws IOException {
+        store.close();
+    }
+
+    /**
+     * Every state and city comes back, including names the modified UTF-8 encoding handles specially.
+     */
+    @Test
+    void countryRoundTrips() {
+        Map<String, List<BasicCity>> states = Map.of(
+                "State", List.of(new BasicCity("Plain", "1900-01-01"), new BasicCity("Zürich", "1901-02-03")),
+                "Ünïcödé \u0000 State", List.of(new BasicCity("Two\nLines", "1902-03-04")));
+
+        ColdCountry cold = store.write(states);
+
+        assertEquals(3, cold.getCityCount());
+        assertEquals(cities(states), cities(cold.load()));
+    }
+
+    /**
+     * Names longer than 64KB once encoded are stored whole, so any country can be evicted.
+     */
+    @Test
+    void longNamesRoundTrip() {
+        Map<String, List<BasicCity>> states = Map.of("S".repeat(70_000),
+                List.of(new BasicCity("Ü".repeat(40_000), "1900-01-01")));
+
+        assertEquals(cities(states), cities(store.write(states).load()));
+    }
+
+    /**
+     * Each country is read from its own segment, not its neighbours'.
+     */
+    @Test
+    void segmentsAreReadIndependently() {
+        Map<String, List<BasicCity>> first = Map.of("A", List.of(new BasicCity("One", "1900-01-01")));
+        Map<String, List<BasicCity>> second = Map.of(
+                "B", List.of(new BasicCity("Two", "1901-01-01"), new BasicCity("Three", "1902-01-01")),
+                "C", List.of(new BasicCity("Four", "1903-01-01")));
+        Map<String, List<BasicCity>> third = Map.of("D", List.of(new BasicCity("Five", "1904-01-01")));
+
+        ColdCountry firstCold = store.write(first);
+        ColdCountry secondCold = store.write(second);
+        ColdCountry thirdCold = store.write(third);
+
+        assertEquals(cities(third), cities(thirdCold.load()));
+        assertEquals(cities(first), cities(firstCold.load()));
+        assertEquals(cities(second), cities(secondCold.load()));
+        // Lookups through the map read the segment too.
+        assertTrue(secondCold.containsKey("C"));
+        assertFalse(secondCold.containsKey("A"));
+        assertEquals("Four", secondCold.get("C").get(0).getName());
+    }
+
+    /**
+     * Closing the store deletes the segment file.
+     * @throws IOException if the directory can't be listed.
+     */
+    @Test
+    void closeDeletesFile() throws IOException {
+        store.write(Map.of("A", List.of(new BasicCity("One", "1900-01-01"))));
+
+        store.close();
+
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    /**
+     * Lists every city in a country.
+     * @param states the states and cities in the country.
+     * @return one entry per city with every field, sorted.
+     */
+    private static Set<String> cities(Map<String, List<BasicCity>> states) {
+        TreeSet<String> cities = new TreeSet<>();
+        for (Map.Entry<String, List<BasicCity>> state : states.entrySet()) {
+            for (BasicCity city : state.getValue()) {
+                cities.add(city.getName() + "|" + state.getKey() + "|" + city.getFoundingDate());
+            }
+        }
+        return cities;
+    }
+}
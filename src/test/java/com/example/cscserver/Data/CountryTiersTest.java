@@ -0,0 +1,117 @@
+package com.example.cscserver.Data;
+
+import com.example.cscserver.Model.BasicCity;
+import com.example.cscserver.Model.City;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the segment file is compacted as countries are rewritten, so it doesn't grow
+ * without limit, and that older snapshots can still read the countries they refer to.
+ * @author Karl Clifford
+ * @version 1.0.0
+ */
+class CountryTiersTest {
+
+    /**
+     * The number of cities in each country.
+     */
+    private static final int CITIES = 50;
+
+    /**
+     * Holds the segment files.
+     */
+    @TempDir
+    Path directory;
+
+    /**
+     * The number of times a country is changed and evicted.
+     */
+    private static final int ROUNDS = 40;
+
+    /**
+     * The tiers being tested, with room on the heap for one country however much it grows.
+     */
+    private CountryTiers tiers;
+
+    /**
+     * Starts with an empty segment file that is compacted at any size.
+     * @throws IOException if the file can't be created.
+     */
+    @BeforeEach
+    void createTiers() throws IOException {
+        tiers = new CountryTiers(directory, CITIES * 2 - 1, 1);
+    }
+
+    /**
+     * Closes the segment files.
+     * @throws IOException if a file can't be closed.
+     */
+    @AfterEach
+    void closeTiers() throws IOException {
+        tiers.close();
+    }
+
+    /**
+     * Two countries take turns being changed and evicted, each eviction writes the country again.
+     */
+    @Test
+    void rewrittenCountriesAreCompacted() {
+        CitySnapshot.Builder builder = CitySnapshot.EMPTY.toBuilder();
+        for (int i = 0; i < CITIES; i++) {
+            builder.add(new City("A" + i, "State", "A", "1900-01-01"));
+            builder.add(new City("B" + i, "State", "B", "1900-01-01"));
+        }
+        tiers.touch("A");
+        tiers.touch("B");
+        tiers.evict(builder);
+        CitySnapshot first = builder.build();
+        assertInstanceOf(ColdCountry.class, first.getCountries().get("A"));
+        long oneCountry = tiers.getSegmentBytes();
+
+        CitySnapshot snapshot = first;
+        for (int round = 0; round < ROUNDS; round++) {
+            String country = round % 2 == 0 ? "A" : "B";
+            builder = snapshot.toBuilder();
+            tiers.promote(builder, country);
+            builder.add(new City("Extra" + round, "State", country, "1900-01-01"));
+            tiers.touch(country);
+            tiers.evict(builder);
+            snapshot = builder.build();
+
+            // Without compaction the file would hold a copy of a country for every round.
+            assertTrue(tiers.getSegmentBytes() <= oneCountry * 6,
+                    "segment file grew to " + tiers.getSegmentBytes() + " bytes");
+        }
+
+        // Every change is still there.
+        assertEquals(CITIES + ROUNDS / 2, count(snapshot.getCountries().get("A")));
+        assertEquals(CITIES + ROUNDS / 2, count(snapshot.getCountries().get("B")));
+        // The first snapshot's country is read from the file it was written to.
+        assertEquals(CITIES, count(first.getCountries().get("A")));
+    }
+
+    /**
+     * Counts the cities in a country, reading it from disk if it has been evicted.
+     * @param states the states in the country.
+     * @return the number of cities.
+     */
+    private static int count(Map<String, List<BasicCity>> states) {
+        int cities = 0;
+        for (List<BasicCity> state : states.values()) {
+            cities += state.size();
+        }
+        return cities;
+    }
+}
@@ -0,0 +1,315 @@
+package com.example.cscserver.Data;
+
+import com.example.cscserver.Model.BasicCity;
+import com.example.cscserver.Model.City;
+import com.example.cscserver.configuration.CityComparator;
+import com.example.cscserver.configuration.CityWrapper;
+import com.google.gson.Gson;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CyclicBarrier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares the throughput and tail latency of the data service in both write modes with a store
+ * guarded by one lock, like the data service before it had a writer thread, where reads also
+ * wait for the lock. Every thread stores and removes
+ * its own cities and reads a country now and then. Not run by the normal build, run it with
+ * mvn test -Dtest=DataServiceBenchmark and size it with -Dcsc.benchmark.threads and
+ * -Dcsc.benchmark.operations.
+ * @author Karl Clifford
+ * @version 1.0.0
+ */
+class DataServiceBenchmark {
+
+    /**
+     * The number of threads running operations at once.
+     */
+    private static final int THREADS = Integer.getInteger("csc.benchmark.threads", 8);
+
+    /**
+     * The number of operations each thread runs per measured run.
+     */
+    private static final int OPERATIONS = Integer.getInteger("csc.benchmark.operations", 50_000);
+
+    /**
+     * The number of countries the cities are spread across.
+     */
+    private static final int COUNTRIES = 50;
+
+    /**
+     * The number of cities stored in each country before the workload starts, so reads have cities to sort.
+     */
+    private static final int CITIES_PER_COUNTRY = 100;
+
+    /**
+     * Encodes read results, as the server does.
+     */
+    private static final Gson GSON = new Gson();
+
+    /**
+     * Runs the workload against both stores and prints the results.
+     * @throws Exception if a thread fails.
+     */
+    @Test
+    void compareWithSingleLock() throws Exception {
+        System.out.println("threads=" + THREADS + " operations/thread=" + OPERATIONS);
+
+        LockedCities locked = new LockedCities();
+        run("single lock", new Store() {
+            @Override
+            public int store(City city) {
+                return locked.store(city);
+            }
+
+            @Override
+            public int remove(City city) {
+                return locked.remove(city);
+            }
+
+            @Override
+            public int read(String country) {
+                return locked.read(country);
+            }
+        });
+
+        for (DataService.WriteMode mode : DataService.WriteMode.values()) {
+            DataService data = new DataService(mode);
+            try {
+                run(mode == DataService.WriteMode.LOCK ? "lock mode" : "writer thread", new Store() {
+                    @Override
+                    public int store(City city) throws Exception {
+                        return data.storeCity(city).get().getStatusCode().value();
+                    }
+
+                    @Override
+                    public int remove(City city) throws Exception {
+                        return data.removeCity(city.getName(), city.getState(), city.getCountry())
+                                .get().getStatusCode().value();
+                    }
+
+                    @Override
+                    public int read(String country) throws Exception {
+                        return data.getCities(country, null, null).get().getStatusCode().value();
+                    }
+                });
+            } finally {
+                data.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Fills and warms up a store, then measures the workload against it.
+     * @param name what to call the store in the results.
+     * @param store the store.
+     * @throws Exception if a thread fails.
+     */
+    private static void run(String name, Store store) throws Exception {
+        for (int country = 0; country < COUNTRIES; country++) {
+            for (int i = 0; i < CITIES_PER_COUNTRY; i++) {
+                store.store(new City("Resident" + i, "State" + (i % 4), "Country" + country,
+                        (1800 + i) + "-01-01"));
+            }
+        }
+
+        // Let the JIT compile the hot paths first.
+        workload(store, OPERATIONS / 5);
+
+        long start = System.nanoTime();
+        long[][] latencies = workload(store, OPERATIONS);
+        long elapsed = System.nanoTime() - start;
+
+        long[] writes = Arrays.stream(latencies).flatMapToLong(Arrays::stream).filter(nanos -> nanos > 0).toArray();
+        long[] reads = Arrays.stream(latencies).flatMapToLong(Arrays::stream).filter(nanos -> nanos < 0)
+                .map(nanos -> -nanos).toArray();
+        System.out.printf("%-14s %,12.0f ops/s  writes %s  reads %s%n", name,
+                THREADS * (double) OPERATIONS / elapsed * 1e9, percentiles(writes), percentiles(reads));
+    }
+
+    /**
+     * Runs every thread's operations at once.
+     * @param store the store.
+     * @param operations the number of operations each thread runs.
+     * @return each thread's operation latencies in nanoseconds, negative for reads.
+     * @throws Exception if a thread fails.
+     */
+    private static long[][] workload(Store store, int operations) throws Exception {
+        long[][] latencies = new long[THREADS][operations];
+        CyclicBarrier start = new CyclicBarrier(THREADS);
+        Exception[] failure = new Exception[1];
+        Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            threads[t] = new Thread(() -> {
+                try {
+                    start.await();
+                    runOperations(store, thread, latencies[thread]);
+                } catch (Exception e) {
+                    synchronized (failure) {
+                        failure[0] = e;
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        return latencies;
+    }
+
+    /**
+     * Runs one thread's operations: a read of a country every fifth operation, otherwise
+     * alternately storing a new city and removing it again.
+     * @param store the store.
+     * @param thread the thread's number, so its cities don't clash with other threads'.
+     * @param latencies filled with each operation's latency in nanoseconds, negative for reads.
+     * @throws Exception if an operation fails.
+     */
+    private static void runOperations(Store store, int thread, long[] latencies) throws Exception {
+        City city = null;
+        for (int i = 0; i < latencies.length; i++) {
+            long start = System.nanoTime();
+            if (i % 5 == 4) {
+                store.read("Country" + (i % COUNTRIES));
+                latencies[i] = -Math.max(1, System.nanoTime() - start);
+                continue;
+            }
+            if (city == null) {
+                city = new City("City" + thread + "-" + i, "State" + (i % 4), "Country" + (i % COUNTRIES),
+                        "2000-01-01");
+                assertEquals(204, store.store(city), "storing a new city should succeed");
+            } else {
+                assertEquals(204, store.remove(city), "removing a stored city should succeed");
+                city = null;
+            }
+            latencies[i] = Math.max(1, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Summarises latencies.
+     * @param nanos the latencies in nanoseconds.
+     * @return the median, 99th and 99.9th percentile in microseconds.
+     */
+    private static String percentiles(long[] nanos) {
+        Arrays.sort(nanos);
+        return String.format("p50=%,dus p99=%,dus p99.9=%,dus",
+                nanos[(int) (nanos.length * 0.5)] / 1000,
+                nanos[(int) (nanos.length * 0.99)] / 1000,
+                nanos[(int) (nanos.length * 0.999)] / 1000);
+    }
+
+    /**
+     * The operations the workload runs.
+     */
+    private interface Store {
+
+        /**
+         * Stores a city.
+         * @param city the city.
+         * @return the response status code.
+         * @throws Exception if the store fails.
+         */
+        int store(City city) throws Exception;
+
+        /**
+         * Removes a city.
+         * @param city the city.
+         * @return the response status code.
+         * @throws Exception if the remove fails.
+         */
+        int remove(City city) throws Exception;
+
+        /**
+         * Reads the cities in a country, sorted by date and encoded as JSON.
+         * @param country the country.
+         * @return the response status code.
+         * @throws Exception if the read fails.
+         */
+        int read(String country) throws Exception;
+    }
+
+    /**
+     * Countries, states and cities guarded by one lock, so reads wait for writes and each other.
+     */
+    private static final class LockedCities {
+
+        /**
+         * The cities by country and state.
+         */
+        private final HashMap<String, HashMap<String, ArrayList<BasicCity>>> data = new HashMap<>();
+
+        /**
+         * Stores a city if it doesn't exist.
+         * @param city the city.
+         * @return 204 if stored or 409 if it already exists.
+         */
+        private synchronized int store(City city) {
+            List<BasicCity> cities = data.computeIfAbsent(city.getCountry(), country -> new HashMap<>())
+                    .computeIfAbsent(city.getState(), state -> new ArrayList<>());
+            for (BasicCity stored : cities) {
+                if (stored.getName().equals(city.getName())) {
+                    return 409;
+                }
+            }
+            cities.add(new BasicCity(city.getName(), city.getFoundingDate()));
+            return 204;
+        }
+
+        /**
+         * Removes a city, dropping its state and country if they become empty.
+         * @param city the city.
+         * @return 204 if removed or 404 if it doesn't exist.
+         */
+        private synchronized int remove(City city) {
+            HashMap<String, ArrayList<BasicCity>> states = data.get(city.getCountry());
+            if (states == null || !states.containsKey(city.getState())
+                    || !states.get(city.getState()).removeIf(stored -> stored.getName().equals(city.getName()))) {
+                return 404;
+            }
+            if (states.get(city.getState()).isEmpty()) {
+                states.remove(city.getState());
+                if (states.isEmpty()) {
+                    data.remove(city.getCountry());
+                }
+            }
+            return 204;
+        }
+
+        /**
+         * Sorts and encodes the cities in a country.
+         * @param country the country.
+         * @return 200 if it has cities or 404 if it doesn't exist.
+         */
+        private synchronized int read(String country) {
+            HashMap<String, ArrayList<BasicCity>> states = data.get(country);
+            if (states == null) {
+                return 404;
+            }
+            PriorityQueue<City> sorted = new PriorityQueue<>(new CityComparator());
+            for (Map.Entry<String, ArrayList<BasicCity>> state : states.entrySet()) {
+                for (BasicCity city : state.getValue()) {
+                    sorted.add(new City(city.getName(), state.getKey(), country, city.getFoundingDate()));
+                }
+            }
+            ArrayList<City> cities = new ArrayList<>(sorted.size());
+            while (!sorted.isEmpty()) {
+                cities.add(sorted.poll());
+            }
+            GSON.toJson(new CityWrapper(cities));
+            return 200;
+        }
+    }
+}
@@ -0,0 +1,468 @@
+package com.example.cscserver.Data;
+
+import com.example.cscserver.Model.City;
+import com.google.gson.Gson;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.ResponseEntity;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Hammers the data service with concurrent stores, removes and reads of a few shared
+ * cities and checks every history is linearizable: the results must match some order
+ * of the operations, consistent with real time, applied one at a time to a set of cities.
+ * Any new implementation of the data service must keep passing this test.
+ * @author Karl Clifford
+ * @version 1.0.0
+ */
+class DataServiceLinearizabilityTest {
+
+    /**
+     * The country every city is stored in, so reads of the country see every change.
+     */
+    private static final String COUNTRY = "Linearia";
+
+    /**
+     * The states of the shared cities.
+     */
+    private static final String[] STATES = {"North", "North", "North", "South", "South", "South"};
+
+    /**
+     * The names of the shared cities, unique so a country read identifies each city.
+     */
+    private static final String[] NAMES = {"Aston", "Bourne", "Carlow", "Dover", "Exton", "Fulham"};
+
+    /**
+     * The number of threads running operations at once.
+     */
+    private static final int THREADS = 4;
+
+    /**
+     * The number of operations each thread runs per history, the checker handles up to 64 in total.
+     */
+    private static final int OPERATIONS_PER_THREAD = 8;
+
+    /**
+     * The number of histories checked, raise it with -Dcsc.stress.rounds for a longer run.
+     */
+    private static final int ROUNDS = Integer.getInteger("csc.stress.rounds", 300);
+
+    /**
+     * Reads city lists out of responses.
+     */
+    private static final Gson GSON = new Gson();
+
+    /**
+     * The service under test, replaced for every history.
+     */
+    private DataService data;
+
+    /**
+     * Starts with an empty service.
+     */
+    @BeforeEach
+    void createService() {
+        data = newService();
+    }
+
+    /**
+     * Creates the service under test.
+     * @return a new, empty service.
+     */
+    DataService newService() {
+        return new DataService();
+    }
+
+    /**
+     * Stops the writer thread.
+     */
+    @AfterEach
+    void stopService() {
+        data.shutdown();
+    }
+
+    /**
+     * Every thread stores the same city at once, exactly one of them must succeed.
+     * @throws Exception if a thread fails.
+     */
+    @Test
+    @Timeout(value = 60, unit = TimeUnit.SECONDS)
+    void concurrentStoresOfTheSameCityOnlySucceedOnce() throws Exception {
+        for (int round = 0; round < ROUNDS; round++) {
+            City city = new City("Racecourse" + round, "State", COUNTRY, "2000-01-01");
+            AtomicInteger stored = new AtomicInteger();
+            AtomicInteger conflicts = new AtomicInteger();
+            CyclicBarrier start = new CyclicBarrier(THREADS);
+            runThreads(thread -> {
+                start.await();
+                HttpStatusCode status = data.storeCity(city).get().getStatusCode();
+                (status == HttpStatus.NO_CONTENT ? stored : conflicts).incrementAndGet();
+            });
+            assertEquals(1, stored.get(), "exactly one store should succeed");
+            assertEquals(THREADS - 1, conflicts.get(), "every other store should conflict");
+        }
+    }
+
+    /**
+     * Runs random operations on the shared cities from several threads and checks each history.
+     * @throws Exception if a thread fails.
+     */
+    @Test
+    @Timeout(value = 120, unit = TimeUnit.SECONDS)
+    void historiesAreLinearizable() throws Exception {
+        for (int round = 0; round < ROUNDS; round++) {
+            if (round > 0) {
+                // Each history starts from an empty service.
+                data.shutdown();
+                data = newService();
+            }
+
+            List<List<Operation>> perThread = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                perThread.add(new ArrayList<>());
+            }
+            long seed = round;
+            CyclicBarrier start = new CyclicBarrier(THREADS);
+            runThreads(thread -> {
+                Random random = new Random(seed * THREADS + thread);
+                start.await();
+                for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                    perThread.get(thread).add(runRandomOperation(random));
+                }
+            });
+
+            List<Operation> history = new ArrayList<>();
+            perThread.forEach(history::addAll);
+            int failedRound = round;
+            assertNull(checkLinearizable(history), () -> "history of round " + failedRound
+                    + " isn't linearizable:\n" + describe(history));
+        }
+    }
+
+    /**
+     * Makes sure the checker itself rejects histories no set could produce.
+     */
+    @Test
+    void checkerRejectsImpossibleHistories() {
+        // Two stores of the same city can't both succeed one after the other.
+        assertEquals("no valid order of 2 operations", checkLinearizable(List.of(
+                new Operation(Operation.STORE, 0, 0, 10, 204),
+                new Operation(Operation.STORE, 0, 20, 30, 204))));
+        // A read can't miss a store that finished before it started.
+        assertEquals("no valid order of 2 operations", checkLinearizable(List.of(
+                new Operation(Operation.STORE, 1, 0, 10, 204),
+                new Operation(Operation.GET, 0, 20, 30, 0))));
+        // Overlapping operations can take effect in either order.
+        assertNull(checkLinearizable(List.of(
+                new Operation(Operation.STORE, 2, 0, 30, 204),
+                new Operation(Operation.EXISTS, 2, 10, 20, 1),
+                new Operation(Operation.REMOVE, 2, 5, 40, 204),
+                new Operation(Operation.EXISTS, 2, 50, 60, 0))));
+    }
+
+    /**
+     * Runs one random operation, recording when it started and finished.
+     * @param random picks the operation.
+     * @return the completed operation.
+     * @throws Exception if the service fails.
+     */
+    private Operation runRandomOperation(Random random) throws Exception {
+        int kind = random.nextInt(4);
+        int key = random.nextInt(NAMES.length);
+        Operation operation = new Operation(kind, key);
+
+        operation.invoked = System.nanoTime();
+        switch (kind) {
+            case Operation.STORE -> operation.result = data.storeCity(
+                    new City(NAMES[key], STATES[key], COUNTRY, "1999-12-31")).get().getStatusCode().value();
+            case Operation.REMOVE -> operation.result = data.removeCity(
+                    NAMES[key], STATES[key], COUNTRY).get().getStatusCode().value();
+            case Operation.EXISTS -> operation.result = (readCities(STATES[key]) >> key) & 1;
+            default -> operation.result = readCities(null);
+        }
+        operation.returned = System.nanoTime();
+        return operation;
+    }
+
+    /**
+     * Reads the shared cities in the country or one of its states.
+     * @param state the state to read, null to read the whole country.
+     * @return a bit set of the cities found, bit i is set if NAMES[i] was returned.
+     * @throws Exception if the service fails.
+     */
+    private int readCities(String state) throws Exception {
+        ResponseEntity<?> response = data.getCities(COUNTRY, state, null).get();
+        if (response.getStatusCode() == HttpStatus.NOT_FOUND) {
+            return 0;
+        }
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+
+        int found = 0;
+        for (ReadCity city : GSON.fromJson((String) response.getBody(), ReadResponse.class).cities) {
+            for (int i = 0; i < NAMES.length; i++) {
+                if (NAMES[i].equals(city.name)) {
+                    found |= 1 << i;
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Searches for an order of the operations that respects real time and matches every result,
+     * using the Wing and Gong algorithm with memoisation of states already explored.
+     * @param history the completed operations.
+     * @return null if the history is linearizable, otherwise a description of the failure.
+     */
+    static String checkLinearizable(List<Operation> history) {
+        if (history.size() > Long.SIZE) {
+            throw new IllegalArgumentException("histories are limited to " + Long.SIZE + " operations");
+        }
+        List<Operation> operations = new ArrayList<>(history);
+        operations.sort(Comparator.comparingLong(operation -> operation.invoked));
+        long everything = operations.size() == Long.SIZE ? -1L : (1L << operations.size()) - 1;
+        boolean found = search(operations, 0L, 0, everything, new HashSet<>());
+        return found ? null : "no valid order of " + operations.size() + " operations";
+    }
+
+    /**
+     * Tries every operation that could take effect next.
+     * @param operations the operations, sorted by invocation time.
+     * @param done the operations already placed in the order.
+     * @param cities the model's cities once those operations are applied.
+     * @param everything the set of all operations.
+     * @param explored states already known not to lead to a valid order.
+     * @return true if the remaining operations can be placed.
+     */
+    private static boolean search(List<Operation> operations, long done, int cities, long everything,
+                                  HashSet<List<Long>> explored) {
+        if (done == everything) {
+            return true;
+        }
+        if (!explored.add(List.of(done, (long) cities))) {
+            return false;
+        }
+
+        // An operation can go next only if it started before every pending operation finished.
+        long firstReturn = Long.MAX_VALUE;
+        for (int i = 0; i < operations.size(); i++) {
+            if ((done & (1L << i)) == 0) {
+                firstReturn = Math.min(firstReturn, operations.get(i).returned);
+            }
+        }
+        for (int i = 0; i < operations.size(); i++) {
+            Operation operation = operations.get(i);
+            if (operation.invoked > firstReturn) {
+                // Sorted by invocation time, so no later operation can go next either.
+                break;
+            }
+            if ((done & (1L << i)) != 0) {
+                continue;
+            }
+            int next = operation.apply(cities);
+            if (next >= 0 && search(operations, done | (1L << i), next, everything, explored)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Lists the operations of a history for a failure message.
+     * @param history the operations.
+     * @return one line per operation.
+     */
+    private static String describe(List<Operation> history) {
+        StringBuilder description = new StringBuilder();
+        long start = history.stream().mapToLong(operation -> operation.invoked).min().orElse(0);
+        history.stream()
+                .sorted(Comparator.comparingLong(operation -> operation.invoked))
+                .forEach(operation -> description.append(operation.describe(start)).append('\n'));
+        return description.toString();
+    }
+
+    /**
+     * Runs a task on every thread at once and waits for them all.
+     * @param task the task, given the thread's number.
+     * @throws Exception if a task fails.
+     */
+    private static void runThreads(ThreadTask task) throws Exception {
+        List<Thread> threads = new ArrayList<>();
+        List<Throwable> failures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            int thread = i;
+            threads.add(new Thread(() -> {
+                try {
+                    task.run(thread);
+                } catch (Throwable e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                }
+            }, "linearizability-" + i));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (!failures.isEmpty()) {
+            fail(failures.get(0));
+        }
+    }
+
+    /**
+     * A task run on each test thread.
+     */
+    @FunctionalInterface
+    private interface ThreadTask {
+
+        /**
+         * Runs the task.
+         * @param thread the thread's number.
+         * @throws Exception if the task fails.
+         */
+        void run(int thread) throws Exception;
+    }
+
+    /**
+     * A completed operation and its result.
+     */
+    static final class Operation {
+
+        /**
+         * Stores a city, the result is the status code.
+         */
+        static final int STORE = 0;
+
+        /**
+         * Removes a city, the result is the status code.
+         */
+        static final int REMOVE = 1;
+
+        /**
+         * Checks a city exists by reading its state, the result is 1 if it was found.
+         */
+        static final int EXISTS = 2;
+
+        /**
+         * Reads the whole country, the result is the bit set of cities found.
+         */
+        static final int GET = 3;
+
+        /**
+         * The kind of operation.
+         */
+        private final int kind;
+
+        /**
+         * The city the operation targets, unused by GET.
+         */
+        private final int key;
+
+        /**
+         * When the operation was called.
+         */
+        private long invoked;
+
+        /**
+         * When the operation returned.
+         */
+        private long returned;
+
+        /**
+         * What the operation returned.
+         */
+        private int result;
+
+        /**
+         * The constructor of this class.
+         * @param kind the kind of operation.
+         * @param key the city the operation targets.
+         */
+        Operation(int kind, int key) {
+            this.kind = kind;
+            this.key = key;
+        }
+
+        /**
+         * The constructor used for recorded histories.
+         * @param kind the kind of operation.
+         * @param key the city the operation targets.
+         * @param invoked when the operation was called.
+         * @param returned when the operation returned.
+         * @param result what the operation returned.
+         */
+        Operation(int kind, int key, long invoked, long returned, int result) {
+            this(kind, key);
+            this.invoked = invoked;
+            this.returned = returned;
+            this.result = result;
+        }
+
+        /**
+         * Applies this operation to the sequential model, a set of cities.
+         * @param cities the cities before the operation, bit i is set if NAMES[i] is stored.
+         * @return the cities afterwards or -1 if the recorded result isn't possible from this state.
+         */
+        int apply(int cities) {
+            int bit = 1 << key;
+            boolean present = (cities & bit) != 0;
+            return switch (kind) {
+                case STORE -> result == (present ? 409 : 204) ? cities | bit : -1;
+                case REMOVE -> result == (present ? 204 : 404) ? cities & ~bit : -1;
+                case EXISTS -> result == (present ? 1 : 0) ? cities : -1;
+                default -> result == cities ? cities : -1;
+            };
+        }
+
+        /**
+         * Describes this operation for a failure message.
+         * @param start the time the history started.
+         * @return the operation, its result and when it ran in microseconds.
+         */
+        String describe(long start) {
+            String[] kinds = {"store", "remove", "exists", "get"};
+            String target = kind == GET ? COUNTRY : NAMES[key];
+            return String.format("[%8d, %8d] %s(%s) -> %d", (invoked - start) / 1000, (returned - start) / 1000,
+                    kinds[kind], target, result);
+        }
+    }
+
+    /**
+     * The body of a city read.
+     */
+    private static final class ReadResponse {
+
+        /**
+         * The cities found.
+         */
+        private List<ReadCity> cities;
+    }
+
+    /**
+     * A city in the body of a city read.
+     */
+    private static final class ReadCity {
+
+        /**
+         * The name of the city.
+         */
+        private String name;
+    }
+}
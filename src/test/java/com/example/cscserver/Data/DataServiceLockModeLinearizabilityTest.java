@@ -0,0 +1,19 @@
+package com.example.cscserver.Data;
+
+/**
+ * Runs the linearizability checks against the data service in lock mode, where each
+ * request thread applies its own change.
+ * @author Karl Clifford
+ * @version 1.0.0
+ */
+class DataServiceLockModeLinearizabilityTest extends DataServiceLinearizabilityTest {
+
+    /**
+     * Creates the service under test in lock mode.
+     * @return a new, empty service.
+     */
+    @Override
+    DataService newService() {
+        return new DataService(DataService.WriteMode.LOCK);
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.cscserver.Data;
+
+/**
+ * Runs the tiering checks against the data service in lock mode, where reads promote
+ * cold countries on their own thread.
+ * @author Karl Clifford
+ * @version 1.0.0
+ */
+class DataServiceLockModeTieringTest extends DataServiceTieringTest {
+
+    /**
+     * Applies changes in lock mode.
+     * @return the write mode property.
+     */
+    @Override
+    String writeMode() {
+        return "lock";
+    }
+}
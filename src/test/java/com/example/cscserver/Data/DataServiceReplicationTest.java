@@ -0,0 +1,190 @@
+package com.example.cscserver.Data;
+
+import com.example.cscserver.Model.BasicCity;
+import com.example.cscserver.Model.City;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Checks a follower applies the leader's changes in order, skips changes it already has
+ * and refuses changes that don't follow on from its data.
+ * @author Karl Clifford
+ * @version 1.0.0
+ */
+class DataServiceReplicationTest {
+
+    /**
+     * The follower's data.
+     */
+    private DataService data;
+
+    /**
+     * Starts each test from the leader's snapshot at version 2, holding two cities.
+     * @throws Exception if the snapshot can't be installed.
+     */
+    @BeforeEach
+    void installSnapshot() throws Exception {
+        data = new DataService();
+        data.becomeReplica();
+        CitySnapshot snapshot = CitySnapshot.of(Map.of("Country", Map.of("State", List.of(
+                new BasicCity("One", "1900-01-01"), new BasicCity("Two", "1901-01-01")))), 2);
+        assertEquals(204, data.install(snapshot).get().getStatusCode().value());
+    }
+
+    /**
+     * Stops the writer thread.
+     */
+    @AfterEach
+    void stopService() {
+        data.shutdown();
+    }
+
+    /**
+     * Changes following on from the snapshot are applied in order and passed on to listeners.
+     * @throws Exception if the changes can't be applied.
+     */
+    @Test
+    void appliesChangesInOrder() throws Exception {
+        CopyOnWriteArrayList<Long> published = new CopyOnWriteArrayList<>();
+        data.addChangeListener(batch -> batch.getChanges().forEach(change -> published.add(change.getSequence())));
+
+        assertEquals(204, replicate(add("Three", 3), remove("One", 4), add("One", 5)));
+
+        assertEquals(5, data.snapshot().getVersion());
+        assertEquals(Set.of("One|1999-01-01", "Two|1901-01-01", "Three|1999-01-01"), cities());
+        assertEquals(List.of(3L, 4L, 5L), published);
+    }
+
+    /**
+     * Changes the follower already has, from the snapshot or an earlier batch, are skipped.
+     * @throws Exception if the changes can't be applied.
+     */
+    @Test
+    void skipsAppliedChanges() throws Exception {
+        assertEquals(204, replicate(add("Two", 2), add("Three", 3)));
+        assertEquals(204, replicate(add("Three", 3), add("Four", 4)));
+
+        assertEquals(4, data.snapshot().getVersion());
+        assertEquals(Set.of("One|1900-01-01", "Two|1901-01-01", "Three|1999-01-01", "Four|1999-01-01"), cities());
+    }
+
+    /**
+     * A batch that skips a sequence number is refused and nothing changes.
+     * @throws Exception if the batch can't be sent.
+     */
+    @Test
+    void refusesGap() throws Exception {
+        assertEquals(500, replicate(add("Four", 4)));
+
+        assertUnchanged();
+    }
+
+    /**
+     * A batch refused part way through doesn't keep the changes before the bad one.
+     * @throws Exception if the batch can't be sent.
+     */
+    @Test
+    void refusesWholeBatch() throws Exception {
+        assertEquals(500, replicate(add("Three", 3), add("Five", 5)));
+
+        assertUnchanged();
+    }
+
+    /**
+     * A change removing a city the follower doesn't have is refused and nothing changes.
+     * @throws Exception if the batch can't be sent.
+     */
+    @Test
+    void refusesRemovingMissingCity() throws Exception {
+        assertEquals(500, replicate(remove("Missing", 3)));
+
+        assertUnchanged();
+    }
+
+    /**
+     * A change adding a city the follower already has is refused and nothing changes.
+     * @throws Exception if the batch can't be sent.
+     */
+    @Test
+    void refusesAddingExistingCity() throws Exception {
+        assertEquals(500, replicate(add("One", 3)));
+
+        assertUnchanged();
+    }
+
+    /**
+     * A follower only takes changes from the leader.
+     * @throws Exception if the request can't be sent.
+     */
+    @Test
+    void refusesClientChanges() throws Exception {
+        assertThrows(IllegalStateException.class,
+                () -> data.storeCity(new City("Client", "State", "Country", "2000-01-01")));
+
+        assertUnchanged();
+    }
+
+    /**
+     * Sends the follower a batch of changes.
+     * @param changes the changes.
+     * @return the response status code.
+     * @throws Exception if the batch can't be sent.
+     */
+    private int replicate(Change... changes) throws Exception {
+        return data.replicate(new ChangeBatch(System.nanoTime(), List.of(changes))).get().getStatusCode().value();
+    }
+
+    /**
+     * Creates a change adding a city.
+     * @param name the city's name.
+     * @param sequence the change's sequence number.
+     * @return the change.
+     */
+    private static Change add(String name, long sequence) {
+        return new Change(false, new City(name, "State", "Country", "1999-01-01"), sequence);
+    }
+
+    /**
+     * Creates a change removing a city.
+     * @param name the city's name.
+     * @param sequence the change's sequence number.
+     * @return the change.
+     */
+    private static Change remove(String name, long sequence) {
+        return new Change(true, new City(name, "State", "Country", null), sequence);
+    }
+
+    /**
+     * Checks the follower still has exactly the installed snapshot.
+     */
+    private void assertUnchanged() {
+        assertEquals(2, data.snapshot().getVersion());
+        assertEquals(Set.of("One|1900-01-01", "Two|1901-01-01"), cities());
+    }
+
+    /**
+     * Lists every city the follower has.
+     * @return one entry per city with its name and date, sorted.
+     */
+    private Set<String> cities() {
+        TreeSet<String> cities = new TreeSet<>();
+        for (Map<String, List<BasicCity>> states : data.snapshot().getCountries().values()) {
+            for (List<BasicCity> state : states.values()) {
+                for (BasicCity city : state) {
+                    cities.add(city.getName() + "|" + city.getFoundingDate());
+                }
+            }
+        }
+        return cities;
+    }
+}
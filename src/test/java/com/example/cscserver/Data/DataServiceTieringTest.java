@@ -0,0 +1,248 @@
+package com.example.cscserver.Data;
+
+import com.example.cscserver.Model.BasicCity;
+import com.example.cscserver.Model.City;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.ResponseEntity;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the data service with tiering on: the least recently used countries are
+ * evicted, cold countries can still be read and changed, and a promoted country
+ * that hasn't changed is evicted again without being rewritten.
+ * @author Karl Clifford
+ * @version 1.0.0
+ */
+class DataServiceTieringTest {
+
+    /**
+     * The number of cities stored in each country.
+     */
+    private static final int CITIES = 5;
+
+    /**
+     * How long to wait for a promotion requested by a read.
+     */
+    private static final long PROMOTE_TIMEOUT_MILLIS = 5000;
+
+    /**
+     * Holds the segment file.
+     */
+    @TempDir
+    Path directory;
+
+    /**
+     * The service being tested, with room on the heap for two countries.
+     */
+    private DataService data;
+
+    /**
+     * Stores countries A, B and C in that order, so A is evicted when C arrives.
+     * @throws Exception if a city can't be stored.
+     */
+    @BeforeEach
+    void storeCountries() throws Exception {
+        data = new DataService(true, CITIES * 2, directory.toString(), Long.MAX_VALUE, writeMode());
+        for (String country : List.of("A", "B", "C")) {
+            for (int i = 0; i < CITIES; i++) {
+                assertEquals(204, data.storeCity(city(country, i)).get().getStatusCode().value());
+            }
+        }
+    }
+
+    /**
+     * Gets how the service under test applies changes.
+     * @return the write mode property.
+     */
+    String writeMode() {
+        return "writer";
+    }
+
+    /**
+     * Stops the writer thread and deletes the segment file.
+     */
+    @AfterEach
+    void stopService() {
+        data.shutdown();
+    }
+
+    /**
+     * Only the least recently used country is moved to disk.
+     */
+    @Test
+    void evictsLeastRecentlyUsedCountry() {
+        assertCold("A");
+        assertHot("B");
+        assertHot("C");
+    }
+
+    /**
+     * A cold country is read from disk, a whole-dataset read leaves it on disk.
+     * @throws Exception if the read fails.
+     */
+    @Test
+    void readsColdCountry() throws Exception {
+        ResponseEntity<?> all = data.getCities(null, null, null).get();
+        assertEquals(200, all.getStatusCode().value());
+        for (int i = 0; i < CITIES; i++) {
+            assertTrue(((String) all.getBody()).contains("\"A" + i + "\""), "missing city A" + i);
+        }
+        assertCold("A");
+
+        ResponseEntity<?> country = data.getCities("A", null, null).get();
+        assertEquals(200, country.getStatusCode().value());
+        for (int i = 0; i < CITIES; i++) {
+            assertTrue(((String) country.getBody()).contains("\"A" + i + "\""), "missing city A" + i);
+        }
+    }
+
+    /**
+     * A country-scoped read moves its country back onto the heap, evicting the next least recently used.
+     * @throws Exception if the read fails.
+     */
+    @Test
+    void readPromotesCountry() throws Exception {
+        data.getCities("A", null, null).get();
+
+        awaitHot("A");
+        assertCold("B");
+        assertEquals(CITIES, count("A"));
+    }
+
+    /**
+     * Changing a cold country moves it back onto the heap with every city it had.
+     * @throws Exception if a change fails.
+     */
+    @Test
+    void writePromotesCountry() throws Exception {
+        assertEquals(204, data.storeCity(city("A", CITIES)).get().getStatusCode().value());
+        assertHot("A");
+        assertEquals(CITIES + 1, count("A"));
+
+        // B is now the least recently used, removing from it brings it back.
+        assertCold("B");
+        assertEquals(204, data.removeCity("B0", "State", "B").get().getStatusCode().value());
+        assertHot("B");
+        assertEquals(CITIES - 1, count("B"));
+        assertEquals(409, data.storeCity(city("B", 1)).get().getStatusCode().value());
+    }
+
+    /**
+     * A promoted country that hasn't changed is evicted again by reusing its copy on disk.
+     * @throws Exception if a read fails.
+     */
+    @Test
+    void reusesUnchangedCopy() throws Exception {
+        Map<String, List<BasicCity>> cold = data.snapshot().getCountries().get("A");
+
+        // Bring A back, then use C and B so A is the least recently used again.
+        data.getCities("A", null, null).get();
+        awaitHot("A");
+        data.getCities("C", null, null).get();
+        data.getCities("B", null, null).get();
+        awaitHot("B");
+
+        assertSame(cold, data.snapshot().getCountries().get("A"));
+        assertEquals(CITIES, count("A"));
+    }
+
+    /**
+     * Storing many cities skips cities that already exist, including in a cold country, or are repeated.
+     * @throws Exception if the store fails.
+     */
+    @Test
+    void storeAllSkipsExistingCities() throws Exception {
+        int stored = data.storeCities(List.of(city("A", 0), city("A", CITIES), city("A", CITIES), city("D", 0)))
+                .get();
+
+        assertEquals(2, stored);
+        assertEquals(CITIES + 1, count("A"));
+        assertEquals(1, count("D"));
+    }
+
+    /**
+     * If a country can't be read back from disk, none of the cities are stored.
+     * @throws Exception if the segment file can't be created or the snapshot can't be installed.
+     */
+    @Test
+    void failedPromoteStoresNothing() throws Exception {
+        // A country whose file has gone, so it can't be brought back.
+        CountrySegmentStore lost = new CountrySegmentStore(directory);
+        lost.close();
+        Map<String, Map<String, List<BasicCity>>> countries = Map.of(
+                "A", new ColdCountry(lost, 0, 1, 1),
+                "B", Map.of("State", List.of(new BasicCity("B0", "1900-01-01"))));
+        data.install(CitySnapshot.of(countries, 100)).get();
+
+        assertThrows(ExecutionException.class,
+                () -> data.storeCities(List.of(city("B", 1), city("A", 1))).get());
+        assertEquals(100, data.snapshot().getVersion());
+        assertEquals(1, count("B"));
+        assertCold("A");
+    }
+
+    /**
+     * Waits for a promotion requested by a read to be applied.
+     * @param country the country.
+     * @throws InterruptedException if the wait is cancelled.
+     */
+    private void awaitHot(String country) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + PROMOTE_TIMEOUT_MILLIS;
+        while (data.snapshot().getCountries().get(country) instanceof ColdCountry
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertHot(country);
+    }
+
+    /**
+     * Checks a country is on disk.
+     * @param country the country.
+     */
+    private void assertCold(String country) {
+        assertInstanceOf(ColdCountry.class, data.snapshot().getCountries().get(country), country + " should be cold");
+    }
+
+    /**
+     * Checks a country is on the heap.
+     * @param country the country.
+     */
+    private void assertHot(String country) {
+        Map<String, List<BasicCity>> states = data.snapshot().getCountries().get(country);
+        assertTrue(states != null, country + " should exist");
+        assertFalse(states instanceof ColdCountry, country + " should be hot");
+    }
+
+    /**
+     * Counts the cities in a country.
+     * @param country the country.
+     * @return the number of cities.
+     */
+    private int count(String country) {
+        return data.snapshot().getCountries().get(country).get("State").size();
+    }
+
+    /**
+     * Creates a city.
+     * @param country the city's country.
+     * @param number distinguishes cities in the same country.
+     * @return the city.
+     */
+    private static City city(String country, int number) {
+        return new City(country + number, "State", country, "1900-01-01");
+    }
+}
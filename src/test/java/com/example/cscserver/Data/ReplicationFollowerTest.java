@@ -0,0 +1,132 @@
+package com.example.cscserver.Data;
+
+import com.example.cscserver.Model.BasicCity;
+import com.example.cscserver.Model.City;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks a follower starts again from a new snapshot whenever the leader's changes
+ * can't be applied, instead of carrying on with missing changes or giving up.
+ * @author Karl Clifford
+ * @version 1.0.0
+ */
+class ReplicationFollowerTest {
+
+    /**
+     * Stands in for the leader.
+     */
+    private ServerSocket leader;
+
+    /**
+     * The follower's data.
+     */
+    private DataService data;
+
+    /**
+     * The follower being tested.
+     */
+    private ReplicationFollower follower;
+
+    /**
+     * Starts a fake leader and a follower connected to it.
+     * @throws IOException if the fake leader can't listen.
+     */
+    @BeforeEach
+    void startFollower() throws IOException {
+        leader = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        leader.setSoTimeout(10_000);
+        data = new DataService();
+        follower = new ReplicationFollower(data, "follower", leader.getInetAddress().getHostAddress(),
+                leader.getLocalPort(), 1000);
+    }
+
+    /**
+     * Stops the follower and the fake leader.
+     * @throws IOException if the fake leader can't be closed.
+     */
+    @AfterEach
+    void stopFollower() throws IOException {
+        follower.shutdown();
+        data.shutdown();
+        leader.close();
+    }
+
+    /**
+     * A batch the writer thread refuses makes the follower reconnect.
+     * @throws Exception if the fake leader fails.
+     */
+    @Test
+    void reconnectsWhenBatchIsRefused() throws Exception {
+        try (Socket first = leader.accept()) {
+            DataOutputStream out = output(first);
+            ReplicationProtocol.writeSnapshot(out, snapshot());
+            // Skips changes 3 and 4.
+            ReplicationProtocol.writeBatch(out, new ChangeBatch(System.currentTimeMillis(), List.of(
+                    new Change(false, new City("Five", "State", "Country", "1905-01-01"), 5))));
+            out.flush();
+
+            try (Socket second = leader.accept()) {
+                assertEquals(2, data.snapshot().getVersion());
+            }
+        }
+    }
+
+    /**
+     * A batch that can't even be read makes the follower reconnect rather than stop following.
+     * @throws Exception if the fake leader fails.
+     */
+    @Test
+    void reconnectsWhenBatchIsMalformed() throws Exception {
+        try (Socket first = leader.accept()) {
+            DataOutputStream out = output(first);
+            ReplicationProtocol.writeSnapshot(out, snapshot());
+            // Valid bytes, but the date can't be parsed into a city.
+            out.writeByte(ReplicationProtocol.BATCH);
+            out.writeLong(System.currentTimeMillis());
+            out.writeInt(1);
+            out.writeLong(3);
+            out.writeBoolean(false);
+            BinaryStrings.write(out, "Three");
+            BinaryStrings.write(out, "State");
+            BinaryStrings.write(out, "Country");
+            BinaryStrings.write(out, "not a date");
+            out.flush();
+
+            try (Socket second = leader.accept()) {
+                assertEquals(2, data.snapshot().getVersion());
+            }
+        }
+    }
+
+    /**
+     * Gets a buffered stream to the follower.
+     * @param connection the follower's connection.
+     * @return the stream.
+     * @throws IOException if the connection is closed.
+     */
+    private static DataOutputStream output(Socket connection) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+    }
+
+    /**
+     * Creates the leader's snapshot at version 2, holding two cities.
+     * @return the snapshot.
+     */
+    private static CitySnapshot snapshot() {
+        return CitySnapshot.of(Map.of("Country", Map.of("State", List.of(
+                new BasicCity("One", "1900-01-01"), new BasicCity("Two", "1901-01-01")))), 2);
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.cscserver.Data;
+
+import com.example.cscserver.Model.BasicCity;
+import com.example.cscserver.Model.City;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Checks every message the leader writes is read back unchanged by a follower.
+ * @author Karl Clifford
+ * @version 1.0.0
+ */
+class ReplicationProtocolTest {
+
+    /**
+     * A snapshot keeps its version and every country, state and city.
+     * @throws IOException if the message can't be read.
+     */
+    @Test
+    void snapshotRoundTrips() throws IOException {
+        CitySnapshot snapshot = CitySnapshot.of(Map.of(
+                "Country", Map.of(
+                        "State", List.of(new BasicCity("One", "1900-01-01"), new BasicCity("Zürich", "1901-01-01")),
+                        "Other", List.of(new BasicCity("Two\nLines", "1902-01-01"))),
+                "Empty Name Country", Map.of("", List.of(new BasicCity("Three", "1903-01-01")))), 42);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ReplicationProtocol.writeSnapshot(new DataOutputStream(bytes), snapshot);
+        DataInputStream in = input(bytes);
+
+        assertEquals(ReplicationProtocol.SNAPSHOT, in.readByte());
+        CitySnapshot read = ReplicationProtocol.readSnapshot(in);
+        assertEquals(42, read.getVersion());
+        assertEquals(snapshot.getCountries().keySet(), read.getCountries().keySet());
+        for (Map.Entry<String, Map<String, List<BasicCity>>> country : snapshot.getCountries().entrySet()) {
+            Map<String, List<BasicCity>> readStates = read.getCountries().get(country.getKey());
+            assertEquals(country.getValue().keySet(), readStates.keySet());
+            for (Map.Entry<String, List<BasicCity>> state : country.getValue().entrySet()) {
+                assertEquals(describe(state.getValue()), describe(readStates.get(state.getKey())));
+            }
+        }
+        assertEquals(-1, in.read(), "nothing should follow the snapshot");
+    }
+
+    /**
+     * A batch keeps its publish time and each change's sequence, kind and city, removals have no date.
+     * @throws IOException if the message can't be read.
+     */
+    @Test
+    void batchRoundTrips() throws IOException {
+        ChangeBatch batch = new ChangeBatch(123_456_789L, List.of(
+                new Change(false, new City("One", "State", "Country", "1900-01-01"), 7),
+                new Change(true, new City("Two", "State", "Country", null), 8),
+                new Change(false, new City("Comma, Town", "Ünïcödé", "Country", "1901-01-01"), 9)));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ReplicationProtocol.writeBatch(new DataOutputStream(bytes), batch);
+        DataInputStream in = input(bytes);
+
+        assertEquals(ReplicationProtocol.BATCH, in.readByte());
+        ChangeBatch read = ReplicationProtocol.readBatch(in);
+        assertEquals(123_456_789L, read.getPublishedAt());
+        assertEquals(9, read.getLastSequence());
+        assertEquals(batch.getChanges().size(), read.getChanges().size());
+        for (int i = 0; i < batch.getChanges().size(); i++) {
+            Change expected = batch.getChanges().get(i);
+            Change actual = read.getChanges().get(i);
+            assertEquals(expected.getSequence(), actual.getSequence());
+            assertEquals(expected.isRemoved(), actual.isRemoved());
+            assertEquals(expected.getCity().getName(), actual.getCity().getName());
+            assertEquals(expected.getCity().getState(), actual.getCity().getState());
+            assertEquals(expected.getCity().getCountry(), actual.getCity().getCountry());
+            assertEquals(expected.getCity().getFoundingDate(), actual.getCity().getFoundingDate());
+        }
+        assertNull(read.getChanges().get(1).getCity().getFoundingDate());
+        assertEquals(-1, in.read(), "nothing should follow the batch");
+    }
+
+    /**
+     * Fields longer than 64KB once encoded are written and read back whole, nothing limits their length.
+     * @throws IOException if a message can't be read.
+     */
+    @Test
+    void longFieldsRoundTrip() throws IOException {
+        String name = "Ü".repeat(40_000);
+        String country = "C".repeat(70_000);
+        CitySnapshot snapshot = CitySnapshot.of(Map.of(country, Map.of("State",
+                List.of(new BasicCity(name, "1900-01-01")))), 1);
+        ChangeBatch batch = new ChangeBatch(1, List.of(
+                new Change(false, new City(name, "State", country, "1900-01-01"), 2)));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        ReplicationProtocol.writeSnapshot(out, snapshot);
+        ReplicationProtocol.writeBatch(out, batch);
+        DataInputStream in = input(bytes);
+
+        assertEquals(ReplicationProtocol.SNAPSHOT, in.readByte());
+        assertEquals(name, ReplicationProtocol.readSnapshot(in).getCountries().get(country).get("State").get(0)
+                .getName());
+        assertEquals(ReplicationProtocol.BATCH, in.readByte());
+        City city = ReplicationProtocol.readBatch(in).getChanges().get(0).getCity();
+        assertEquals(name, city.getName());
+        assertEquals(country, city.getCountry());
+    }
+
+    /**
+     * Messages written one after another on the same stream are read back in order.
+     * @throws IOException if a message can't be read.
+     */
+    @Test
+    void messagesFollowEachOther() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        ReplicationProtocol.writeSnapshot(out, CitySnapshot.EMPTY);
+        ReplicationProtocol.writeHeartbeat(out, 5);
+        ReplicationProtocol.writeBatch(out, new ChangeBatch(1, List.of(
+                new Change(false, new City("One", "State", "Country", "1900-01-01"), 6))));
+        DataInputStream in = input(bytes);
+
+        assertEquals(ReplicationProtocol.SNAPSHOT, in.readByte());
+        assertEquals(0, ReplicationProtocol.readSnapshot(in).getCountries().size());
+        assertEquals(ReplicationProtocol.HEARTBEAT, in.readByte());
+        assertEquals(5, in.readLong());
+        assertEquals(ReplicationProtocol.BATCH, in.readByte());
+        assertEquals(6, ReplicationProtocol.readBatch(in).getLastSequence());
+        assertEquals(-1, in.read(), "nothing should follow the batch");
+    }
+
+    /**
+     * Reads back what was written.
+     * @param bytes the written messages.
+     * @return a stream over the messages.
+     */
+    private static DataInputStream input(ByteArrayOutputStream bytes) {
+        return new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    /**
+     * Lists the cities in a state.
+     * @param cities the cities.
+     * @return one entry per city with every field, in order.
+     */
+    private static List<String> describe(List<BasicCity> cities) {
+        return cities.stream().map(city -> city.getName() + "|" + city.getFoundingDate()).toList();
+    }
+}
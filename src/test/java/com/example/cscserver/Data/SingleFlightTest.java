@@ -0,0 +1,176 @@
+package com.example.cscserver.Data;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Checks identical concurrent computations run once with every caller sharing the
+ * result or the error, and that a finished computation isn't reused.
+ * @author Karl Clifford
+ * @version 1.0.0
+ */
+class SingleFlightTest {
+
+    /**
+     * The number of callers that arrive while the first is computing.
+     */
+    private static final int WAITERS = 4;
+
+    /**
+     * Callers of the same key while it is computing share the first caller's result.
+     * @throws Exception if a caller fails.
+     */
+    @Test
+    @Timeout(value = 10, unit = TimeUnit.SECONDS)
+    void coalescesConcurrentCalls() throws Exception {
+        SingleFlight<String, Object> flight = new SingleFlight<>("csc.test.flight");
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        Object result = new Object();
+
+        List<CompletableFuture<Object>> callers = startCallers(flight, "key", () -> {
+            runs.incrementAndGet();
+            await(release);
+            return result;
+        });
+        release.countDown();
+
+        for (CompletableFuture<Object> caller : callers) {
+            assertSame(result, caller.get());
+        }
+        assertEquals(1, runs.get());
+    }
+
+    /**
+     * A failed computation fails every caller that shared it with the same error.
+     * @throws Exception if a caller can't be waited for.
+     */
+    @Test
+    @Timeout(value = 10, unit = TimeUnit.SECONDS)
+    void sharesErrorWithEveryCaller() throws Exception {
+        SingleFlight<String, Object> flight = new SingleFlight<>("csc.test.flight");
+        CountDownLatch release = new CountDownLatch(1);
+        IllegalStateException error = new IllegalStateException("read failed");
+
+        List<CompletableFuture<Object>> callers = startCallers(flight, "key", () -> {
+            await(release);
+            throw error;
+        });
+        release.countDown();
+
+        for (CompletableFuture<Object> caller : callers) {
+            ExecutionException failure = assertThrows(ExecutionException.class, caller::get);
+            Throwable cause = failure.getCause() instanceof CompletionException
+                    ? failure.getCause().getCause() : failure.getCause();
+            assertSame(error, cause);
+        }
+    }
+
+    /**
+     * Once a computation has finished, or failed, the next caller of its key runs it again.
+     */
+    @Test
+    void finishedComputationIsNotReused() {
+        SingleFlight<String, Integer> flight = new SingleFlight<>("csc.test.flight");
+        AtomicInteger runs = new AtomicInteger();
+
+        assertEquals(1, flight.execute("key", runs::incrementAndGet));
+        assertEquals(2, flight.execute("key", runs::incrementAndGet));
+        assertThrows(IllegalStateException.class, () -> flight.execute("key", () -> {
+            throw new IllegalStateException("read failed");
+        }));
+        assertEquals(3, flight.execute("key", runs::incrementAndGet));
+        // Other keys never shared anything.
+        assertEquals(4, flight.execute("other", runs::incrementAndGet));
+    }
+
+    /**
+     * Starts a caller that runs the work, then callers of the same key that wait for it.
+     * Returns once every waiter is blocked on the first caller.
+     * @param flight the single flight.
+     * @param key the key every caller uses.
+     * @param work the computation, which must block until the test lets it finish.
+     * @return each caller's result, the first caller's first.
+     * @throws InterruptedException if the test is cancelled.
+     */
+    private static List<CompletableFuture<Object>> startCallers(SingleFlight<String, Object> flight, String key,
+                                                                Supplier<Object> work)
+            throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        List<CompletableFuture<Object>> results = new ArrayList<>();
+        results.add(run(() -> flight.execute(key, () -> {
+            started.countDown();
+            return work.get();
+        })));
+        started.await();
+
+        List<Thread> waiters = new ArrayList<>();
+        for (int i = 0; i < WAITERS; i++) {
+            CompletableFuture<Object> result = new CompletableFuture<>();
+            Thread waiter = new Thread(() -> complete(result, () -> flight.execute(key, () -> {
+                throw new AssertionError("a waiter ran the computation");
+            })));
+            waiter.start();
+            waiters.add(waiter);
+            results.add(result);
+        }
+        // Waiters block in join() once they have found the first caller's flight.
+        for (Thread waiter : waiters) {
+            while (waiter.getState() != Thread.State.WAITING) {
+                Thread.sleep(1);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Runs a call on a new thread.
+     * @param call the call.
+     * @return completed with the call's result or error.
+     */
+    private static CompletableFuture<Object> run(Supplier<Object> call) {
+        CompletableFuture<Object> result = new CompletableFuture<>();
+        new Thread(() -> complete(result, call)).start();
+        return result;
+    }
+
+    /**
+     * Completes a future with a call's result or error.
+     * @param result the future.
+     * @param call the call.
+     */
+    private static void complete(CompletableFuture<Object> result, Supplier<Object> call) {
+        try {
+            result.complete(call.get());
+        } catch (RuntimeException | Error e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Waits for the test to let a computation finish.
+     * @param release counted down by the test.
+     */
+    private static void await(CountDownLatch release) {
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.cscserver.api;
+
+import com.example.cscserver.Data.DataService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks an export keeps its slot while it streams asynchronously, and frees it
+ * once the response is complete.
+ * @author Karl Clifford
+ * @version 1.0.0
+ */
+class AdmissionControlFilterTest {
+
+    /**
+     * Needed by the shard router.
+     */
+    private DataService data;
+
+    /**
+     * The filter being tested, allowing one export at a time.
+     */
+    private AdmissionControlFilter filter;
+
+    /**
+     * Creates a filter with sharding off and room for one export.
+     */
+    @BeforeEach
+    void createFilter() {
+        data = new DataService();
+        filter = new AdmissionControlFilter(true, 64, 8, 16, 1, 10, 2.0, 1000, 1000, 1000,
+                new ShardRouter("", 0, 2000, data));
+    }
+
+    /**
+     * Stops the writer thread.
+     */
+    @AfterEach
+    void stopService() {
+        data.shutdown();
+    }
+
+    /**
+     * A second export is shed while the first is still streaming, and admitted once it is done.
+     * @throws Exception if the filter fails.
+     */
+    @Test
+    void exportHoldsSlotUntilComplete() throws Exception {
+        MockHttpServletRequest first = export();
+        filter.doFilter(first, new MockHttpServletResponse(), (request, response) -> request.startAsync());
+
+        MockHttpServletResponse shed = new MockHttpServletResponse();
+        filter.doFilter(export(), shed, (request, response) -> { });
+        assertEquals(503, shed.getStatus());
+        assertEquals("1", shed.getHeader("Retry-After"));
+
+        ((MockAsyncContext) first.getAsyncContext()).complete();
+        MockHttpServletResponse admitted = new MockHttpServletResponse();
+        filter.doFilter(export(), admitted, (request, response) -> { });
+        assertEquals(200, admitted.getStatus());
+    }
+
+    /**
+     * Exports have their own limit, a streaming export doesn't hold up other reads.
+     * @throws Exception if the filter fails.
+     */
+    @Test
+    void exportDoesNotBlockReads() throws Exception {
+        filter.doFilter(export(), new MockHttpServletResponse(), (request, response) -> request.startAsync());
+
+        MockHttpServletResponse read = new MockHttpServletResponse();
+        filter.doFilter(new MockHttpServletRequest("GET", "/api/v1/city"), read, (request, response) -> { });
+        assertEquals(200, read.getStatus());
+    }
+
+    /**
+     * Creates an export request that can go asynchronous.
+     * @return the request.
+     */
+    private static MockHttpServletRequest export() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/v1/export");
+        request.setAsyncSupported(true);
+        return request;
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.cscserver.api;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks each client gets its burst, is then limited to its rate, and that buckets
+ * refill over time.
+ * @author Karl Clifford
+ * @version 1.0.0
+ */
+class ClientRateLimiterTest {
+
+    /**
+     * One second in nanoseconds.
+     */
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * An arbitrary starting time.
+     */
+    private static final long START = 1_000 * SECOND;
+
+    /**
+     * A client can make its burst of requests at once, then has to wait.
+     */
+    @Test
+    void limitsAfterBurst() {
+        ClientRateLimiter limiter = new ClientRateLimiter(10, 5, 1000);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, limiter.tryAcquire("client", START));
+        }
+        assertEquals(1, limiter.tryAcquire("client", START));
+    }
+
+    /**
+     * One client using its burst doesn't limit another.
+     */
+    @Test
+    void clientsAreLimitedSeparately() {
+        ClientRateLimiter limiter = new ClientRateLimiter(10, 2, 1000);
+        assertEquals(0, limiter.tryAcquire("first", START));
+        assertEquals(0, limiter.tryAcquire("first", START));
+        assertEquals(1, limiter.tryAcquire("first", START));
+
+        assertEquals(0, limiter.tryAcquire("second", START));
+        assertEquals(0, limiter.tryAcquire("second", START));
+    }
+
+    /**
+     * An empty bucket gets tokens back at the configured rate, up to the burst.
+     */
+    @Test
+    void bucketRefills() {
+        ClientRateLimiter limiter = new ClientRateLimiter(10, 5, 1000);
+        for (int i = 0; i < 5; i++) {
+            limiter.tryAcquire("client", START);
+        }
+
+        // A tenth of a second is one token.
+        long later = START + SECOND / 10;
+        assertEquals(0, limiter.tryAcquire("client", later));
+        assertEquals(1, limiter.tryAcquire("client", later));
+
+        // Long idle, the bucket holds no more than the burst.
+        later += 10 * SECOND;
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, limiter.tryAcquire("client", later));
+        }
+        assertEquals(1, limiter.tryAcquire("client", later));
+    }
+
+    /**
+     * With a slow rate the client is told how many seconds until its next token.
+     */
+    @Test
+    void retryAfterFollowsRate() {
+        ClientRateLimiter limiter = new ClientRateLimiter(0.25, 1, 1000);
+        assertEquals(0, limiter.tryAcquire("client", START));
+        assertEquals(4, limiter.tryAcquire("client", START));
+        assertEquals(2, limiter.tryAcquire("client", START + 2 * SECOND));
+        assertEquals(0, limiter.tryAcquire("client", START + 4 * SECOND));
+    }
+
+    /**
+     * Once more clients have been seen than are remembered, the least recently seen start again with a full bucket.
+     */
+    @Test
+    void forgetsLeastRecentlySeenClients() {
+        // One client per stripe.
+        ClientRateLimiter limiter = new ClientRateLimiter(1, 1, 1);
+        assertEquals(0, limiter.tryAcquire("client0", START));
+        assertEquals(1, limiter.tryAcquire("client0", START));
+        for (int i = 1; i <= 200; i++) {
+            limiter.tryAcquire("client" + i, START);
+        }
+        assertEquals(0, limiter.tryAcquire("client0", START));
+    }
+}
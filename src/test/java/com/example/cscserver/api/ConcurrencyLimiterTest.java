@@ -0,0 +1,124 @@
+package com.example.cscserver.api;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks requests are shed once the limit is reached and they have waited too long,
+ * and that the limit follows how much slower than usual requests are.
+ * @author Karl Clifford
+ * @version 1.0.0
+ */
+class ConcurrencyLimiterTest {
+
+    /**
+     * How long a request may wait for a slot in these tests.
+     */
+    private static final long MAX_QUEUE_MILLIS = 50;
+
+    /**
+     * The usual latency of a request in these tests.
+     */
+    private static final long LATENCY_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * A request is shed once every slot is taken and it has waited the maximum queue time.
+     * @throws InterruptedException if a wait is cancelled.
+     */
+    @Test
+    void shedsWhenFull() throws InterruptedException {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 2, MAX_QUEUE_MILLIS, 2.0);
+        assertTrue(limiter.acquire());
+        assertTrue(limiter.acquire());
+
+        long start = System.nanoTime();
+        assertFalse(limiter.acquire());
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(MAX_QUEUE_MILLIS),
+                "shed before waiting the maximum queue time");
+
+        // A freed slot can be taken again.
+        limiter.release(LATENCY_NANOS);
+        assertTrue(limiter.acquire());
+    }
+
+    /**
+     * A queued request takes the slot freed while it waits instead of being shed.
+     * @throws Exception if a wait is cancelled.
+     */
+    @Test
+    void queuedRequestGetsFreedSlot() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 5000, 2.0);
+        assertTrue(limiter.acquire());
+
+        CompletableFuture<Boolean> queued = CompletableFuture.supplyAsync(() -> {
+            try {
+                return limiter.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        });
+        Thread.sleep(MAX_QUEUE_MILLIS);
+        assertFalse(queued.isDone());
+
+        limiter.release(LATENCY_NANOS);
+        assertTrue(queued.get(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * The limit shrinks when requests get much slower than usual, and grows back once they recover.
+     * @throws InterruptedException if a wait is cancelled.
+     */
+    @Test
+    void limitFollowsLatency() throws InterruptedException {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 20, MAX_QUEUE_MILLIS, 2.0);
+        // Learn the usual latency with every slot in use.
+        runFullBatches(limiter, 50, LATENCY_NANOS);
+        assertEquals(20, limiter.getLimit());
+
+        runFullBatches(limiter, 5, LATENCY_NANOS * 20);
+        int slowed = limiter.getLimit();
+        assertTrue(slowed < 20, "limit stayed at " + slowed);
+
+        runFullBatches(limiter, 50, LATENCY_NANOS);
+        assertTrue(limiter.getLimit() > slowed, "limit didn't recover from " + slowed);
+    }
+
+    /**
+     * A limiter whose smallest and largest limit are the same never changes its limit.
+     * @throws InterruptedException if a wait is cancelled.
+     */
+    @Test
+    void fixedLimitDoesNotAdapt() throws InterruptedException {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 2, MAX_QUEUE_MILLIS, 2.0);
+        runFullBatches(limiter, 10, LATENCY_NANOS);
+        runFullBatches(limiter, 10, LATENCY_NANOS * 100);
+        assertEquals(2, limiter.getLimit());
+    }
+
+    /**
+     * Fills every slot, then releases them all with the same latency.
+     * @param limiter the limiter.
+     * @param batches the number of times to fill the slots.
+     * @param latencyNanos the latency each request reports.
+     * @throws InterruptedException if a wait is cancelled.
+     */
+    private static void runFullBatches(ConcurrencyLimiter limiter, int batches, long latencyNanos)
+            throws InterruptedException {
+        for (int batch = 0; batch < batches; batch++) {
+            int running = limiter.getLimit();
+            for (int i = 0; i < running; i++) {
+                assertTrue(limiter.acquire());
+            }
+            for (int i = 0; i < running; i++) {
+                limiter.release(latencyNanos);
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.cscserver.api;
+
+import com.example.cscserver.Data.CityExporter;
+import com.example.cscserver.Data.CityImporter;
+import com.example.cscserver.Data.DataService;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks an export is streamed, and keeps streaming for longer than the container's
+ * default async timeout.
+ * @author Karl Clifford
+ * @version 1.0.0
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class ExportTimeoutTest {
+
+    /**
+     * The container's async timeout in this test, standing in for its 30 second default.
+     */
+    private static final long CONTAINER_TIMEOUT_MILLIS = 1000;
+
+    /**
+     * The number of lines the slow export writes.
+     */
+    private static final int LINES = 30;
+
+    /**
+     * How long the slow export waits between lines, so it runs for three times the container's timeout.
+     */
+    private static final long LINE_DELAY_MILLIS = CONTAINER_TIMEOUT_MILLIS * 3 / LINES;
+
+    /**
+     * The port the server is listening on.
+     */
+    @LocalServerPort
+    private int port;
+
+    /**
+     * The whole export arrives even though it takes longer than the container's async timeout.
+     * @throws Exception if the request fails or the export is cut off.
+     */
+    @Test
+    void slowExportIsNotCutOff() throws Exception {
+        HttpResponse<String> response = HttpClient.newHttpClient().send(
+                HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/v1/export")).build(),
+                HttpResponse.BodyHandlers.ofString());
+
+        assertEquals(200, response.statusCode());
+        assertEquals(LINES, response.body().lines().count());
+    }
+
+    /**
+     * An unknown format is rejected with a JSON error, not streamed.
+     * @throws Exception if the request fails.
+     */
+    @Test
+    void unknownFormatIsRejected() throws Exception {
+        HttpResponse<String> response = HttpClient.newHttpClient().send(
+                HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/v1/export?format=xml")).build(),
+                HttpResponse.BodyHandlers.ofString());
+
+        assertEquals(400, response.statusCode());
+        assertEquals("application/json", response.headers().firstValue("Content-Type").orElse(null));
+        assertTrue(response.body().contains("format must be csv or ndjson"), response.body());
+    }
+
+    /**
+     * Replaces the exporter with a slow one and shortens the container's async timeout.
+     */
+    @TestConfiguration
+    static class SlowExport {
+
+        /**
+         * Writes a line at a time with a pause in between.
+         * @param data the service the cities would be read from.
+         * @return the slow exporter.
+         */
+        @Bean
+        @Primary
+        CityExporter slowExporter(DataService data) {
+            return new CityExporter(data) {
+                @Override
+                public void export(OutputStream out, CityImporter.Format format) throws IOException {
+                    for (int i = 0; i < LINES; i++) {
+                        out.write(("{\"line\":" + i + "}\n").getBytes(StandardCharsets.UTF_8));
+                        out.flush();
+                        try {
+                            Thread.sleep(LINE_DELAY_MILLIS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new IOException("Export interrupted", e);
+                        }
+                    }
+                }
+            };
+        }
+
+        /**
+         * Sets the container's async timeout, used by any async response without its own timeout.
+         * @return the customizer.
+         */
+        @Bean
+        WebServerFactoryCustomizer<TomcatServletWebServerFactory> shortAsyncTimeout() {
+            return factory -> factory.addConnectorCustomizers(
+                    connector -> connector.setAsyncTimeout(CONTAINER_TIMEOUT_MILLIS));
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.cscserver.api;
+
+import com.example.cscserver.Data.DataService;
+import com.example.cscserver.Model.City;
+import com.example.cscserver.configuration.WireFormat;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks reads of every city are gathered from every node, each asked to catch up
+ * to the client's minSequence.
+ * @author Karl Clifford
+ * @version 1.0.0
+ */
+class ShardRouterTest {
+
+    /**
+     * Stands in for the other node.
+     */
+    private HttpServer otherNode;
+
+    /**
+     * The query string of the last request the other node received.
+     */
+    private volatile String lastQuery;
+
+    /**
+     * The status the other node answers with.
+     */
+    private volatile int status;
+
+    /**
+     * The body the other node answers with.
+     */
+    private volatile String body;
+
+    /**
+     * This node's data.
+     */
+    private DataService data;
+
+    /**
+     * The router being tested, this node is the first of two.
+     */
+    private ShardRouter router;
+
+    /**
+     * Starts the other node and a router for this one.
+     * @throws Exception if a city can't be stored or the other node can't listen.
+     */
+    @BeforeEach
+    void startNodes() throws Exception {
+        otherNode = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        otherNode.createContext("/api/v1/city", exchange -> {
+            lastQuery = exchange.getRequestURI().getRawQuery();
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            if (status == 503) {
+                exchange.getResponseHeaders().set(HttpHeaders.RETRY_AFTER, "1");
+            }
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        otherNode.start();
+
+        data = new DataService();
+        data.storeCity(new City("Here", "State", "Local", "1900-01-01")).get();
+        router = new ShardRouter("http://localhost:1,http://127.0.0.1:" + otherNode.getAddress().getPort(),
+                0, 2000, data);
+    }
+
+    /**
+     * Stops both nodes.
+     */
+    @AfterEach
+    void stopNodes() {
+        otherNode.stop(0);
+        data.shutdown();
+    }
+
+    /**
+     * The other node is asked to catch up to the same sequence, and the cities of both nodes are merged by date.
+     */
+    @Test
+    void passesMinSequenceToEveryNode() {
+        status = 200;
+        body = "{\"cities\":[{\"name\":\"There\",\"state\":\"State\",\"country\":\"Remote\","
+                + "\"foundingDate\":\"1800-01-01\"}]}";
+
+        ResponseEntity<?> response = router.gather("2000-01-01", 1L, WireFormat.JSON);
+
+        assertEquals("dateFounded=2000-01-01&minSequence=1", lastQuery);
+        assertEquals(200, response.getStatusCode().value());
+        String cities = response.getBody().toString();
+        // The other node's city is older.
+        assertTrue(cities.indexOf("There") >= 0 && cities.indexOf("There") < cities.indexOf("Here"), cities);
+    }
+
+    /**
+     * A node that hasn't caught up makes the whole read retryable.
+     */
+    @Test
+    void nodeThatHasNotCaughtUpIsRetried() {
+        status = 503;
+        body = "{\"status\":503}";
+
+        ResponseEntity<?> response = router.gather(null, 7L, WireFormat.JSON);
+
+        assertEquals("minSequence=7", lastQuery);
+        assertEquals(503, response.getStatusCode().value());
+        assertEquals("1", response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+    }
+
+    /**
+     * Without a minSequence nothing extra is sent.
+     */
+    @Test
+    void sendsNoQueryWithoutParameters() {
+        status = 404;
+        body = "";
+
+        assertEquals(200, router.gather(null, null, WireFormat.JSON).getStatusCode().value());
+        assertEquals(null, lastQuery);
+    }
+}
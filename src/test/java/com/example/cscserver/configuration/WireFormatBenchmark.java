@@ -0,0 +1,125 @@
+package com.example.cscserver.configuration;
+
+import com.example.cscserver.Model.City;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares the payload size and encode/decode time of each wire format with the Gson JSON
+ * output, for one list of cities. Not run by the normal build, run it with
+ * mvn test -Dtest=WireFormatBenchmark and size it with -Dcsc.benchmark.cities.
+ * @author Karl Clifford
+ * @version 1.0.0
+ */
+class WireFormatBenchmark {
+
+    /**
+     * The number of cities encoded.
+     */
+    private static final int CITIES = Integer.getInteger("csc.benchmark.cities", 100_000);
+
+    /**
+     * The number of timed encodes and decodes of each format, after as many untimed ones.
+     */
+    private static final int ITERATIONS = Integer.getInteger("csc.benchmark.iterations", 20);
+
+    /**
+     * Reads the binary formats back into a tree, as a client would.
+     */
+    private static final Map<WireFormat, ObjectMapper> READERS = Map.of(
+            WireFormat.CBOR, new ObjectMapper(new CBORFactory()),
+            WireFormat.SMILE, new ObjectMapper(new SmileFactory()),
+            WireFormat.MESSAGE_PACK, new ObjectMapper(new MessagePackFactory()));
+
+    /**
+     * Encodes and decodes the same cities in every format and prints the results.
+     * @throws IOException if a payload can't be decoded.
+     */
+    @Test
+    void compareWithGson() throws IOException {
+        ArrayList<City> cities = new ArrayList<>(CITIES);
+        for (int i = 0; i < CITIES; i++) {
+            cities.add(new City("City" + i, "State" + (i % 50), "Country" + (i % 200),
+                    (1700 + i % 300) + "-0" + (1 + i % 9) + "-1" + (i % 10)));
+        }
+        CityWrapper wrapper = new CityWrapper(cities);
+
+        System.out.println("cities=" + CITIES + " iterations=" + ITERATIONS);
+        for (WireFormat format : WireFormat.values()) {
+            byte[] payload = bytes(format.encode(wrapper));
+            assertEquals(CITIES, decode(format, payload), format + " should round trip every city");
+
+            for (int i = 0; i < ITERATIONS; i++) {
+                // Let the JIT compile both paths first.
+                decode(format, bytes(format.encode(wrapper)));
+            }
+            long encodeStart = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                bytes(format.encode(wrapper));
+            }
+            long encodeNanos = (System.nanoTime() - encodeStart) / ITERATIONS;
+            long decodeStart = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                decode(format, payload);
+            }
+            long decodeNanos = (System.nanoTime() - decodeStart) / ITERATIONS;
+
+            System.out.printf("%-13s %,12d bytes  %,11d gzipped  encode %,8.2fms  decode %,8.2fms%n",
+                    format, payload.length, gzip(payload), encodeNanos / 1e6, decodeNanos / 1e6);
+        }
+    }
+
+    /**
+     * Gets the bytes sent for an encoded payload.
+     * @param encoded a JSON string or binary encoding.
+     * @return the bytes on the wire.
+     */
+    private static byte[] bytes(Object encoded) {
+        return encoded instanceof byte[] ? (byte[]) encoded : ((String) encoded).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parses a payload into a tree, JSON with Gson like the server's own JSON.
+     * @param format the payload's format.
+     * @param payload the bytes on the wire.
+     * @return the number of cities decoded.
+     * @throws IOException if the payload can't be decoded.
+     */
+    private static int decode(WireFormat format, byte[] payload) throws IOException {
+        if (format == WireFormat.JSON) {
+            JsonElement tree = JsonParser.parseString(new String(payload, StandardCharsets.UTF_8));
+            return tree.getAsJsonObject().getAsJsonArray("cities").size();
+        }
+        JsonNode tree = READERS.get(format).readTree(payload);
+        return tree.get("cities").size();
+    }
+
+    /**
+     * Measures how small a payload gets with gzip content encoding.
+     * @param payload the bytes on the wire.
+     * @return the gzipped size in bytes.
+     * @throws IOException if the payload can't be compressed.
+     */
+    private static int gzip(byte[] payload) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+            out.write(payload);
+        }
+        return compressed.size();
+    }
+}